@@ -0,0 +1,55 @@
+package messages;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+public class SampleMessages {
+    public static Message of(MessageType type) {
+        switch (type) {
+            case SERVER_ERROR -> { return new Message(type, new ServerError("You are sending messages too fast")); }
+            case CLIENT_LOGIN -> { return new Message(type, LOGIN); }
+            case SERVER_LOGIN_SUCCESS, CLIENT_LIST_REQUEST, CLIENT_LOGOUT -> { return new Message(type, new ServerClientSessionID(USID)); }
+            case SERVER_LIST_RESPONSE -> { return new Message(type, new ServerList(users(LIST_SIZE), 42)); }
+            case CLIENT_MESSAGE -> { return new Message(type, new ClientMessage(TEXT, USID, ClientRoom.DEFAULT_ROOM)); }
+            case SERVER_MESSAGE -> { return new Message(type, chatLine(1000)); }
+            case SERVER_EMPTY_SUCCESS -> { return new Message(type, null); }
+            case SERVER_USER_LOGIN, SERVER_USER_LOGOUT -> { return new Message(type, new ServerUserName(LOGIN.name())); }
+            case SERVER_LIST_ADDED, SERVER_LIST_REMOVED -> { return new Message(type, new ServerListDelta(LOGIN, 43)); }
+            case CLIENT_HISTORY_REQUEST -> { return new Message(type, new ClientHistoryRequest(1000, 50, USID, ClientRoom.DEFAULT_ROOM)); }
+            case SERVER_HISTORY_RESPONSE -> {
+                ArrayList<ServerMessage> messages = new ArrayList<>(HISTORY_SIZE);
+                for (int i = 0; i < HISTORY_SIZE; ++i) {
+                    messages.add(chatLine(950 + i));
+                }
+                return new Message(type, new ServerHistory(messages));
+            }
+            case CLIENT_JOIN_ROOM, CLIENT_LEAVE_ROOM -> { return new Message(type, new ClientRoom("benchmarks", USID)); }
+            case SERVER_ROOM_JOINED, SERVER_ROOM_LEFT -> { return new Message(type, new ServerRoomEvent("benchmarks", LOGIN.name())); }
+            case CLIENT_PRIVATE_MESSAGE -> { return new Message(type, new ClientPrivateMessage("bob", TEXT, 7, USID)); }
+            case SERVER_PRIVATE_MESSAGE -> { return new Message(type, new ServerPrivateMessage(LOGIN.name(), TEXT, 7, 1700000000000L)); }
+            case SERVER_PRIVATE_RECEIPT -> { return new Message(type, new ServerPrivateReceipt("bob", 7, ServerPrivateReceipt.Status.DELIVERED)); }
+            case SERVER_RESYNC -> { return new Message(type, new ServerResync(1234)); }
+            case CLIENT_PING, CLIENT_PONG, SERVER_PING, SERVER_PONG -> { return new Message(type, new Heartbeat(987654321)); }
+
+            default -> throw new IllegalArgumentException("no sample for " + type);
+        }
+    }
+
+    public static ServerMessage chatLine(long id) {
+        return new ServerMessage(TEXT, LOGIN.name(), id, ClientRoom.DEFAULT_ROOM);
+    }
+
+    private static ArrayList<ClientLogin> users(int count) {
+        ArrayList<ClientLogin> users = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            users.add(new ClientLogin("user" + i, LOGIN.client()));
+        }
+        return users;
+    }
+
+    public static final String TEXT = "the quick brown fox jumps over the lazy dog, and then does it again for good measure";
+    private static final ClientLogin LOGIN = new ClientLogin("alice", "Client@4242_01");
+    private static final UUID USID = UUID.fromString("5f1c1b6e-2a7d-4c39-9d1f-0e6a3b8c7d21");
+    private static final int LIST_SIZE = 100;
+    private static final int HISTORY_SIZE = 50;
+}
@@ -0,0 +1,65 @@
+package messages.parsing;
+
+import messages.Message;
+import messages.MessageType;
+import messages.SampleMessages;
+import messages.transport.BufferPool;
+import messages.transport.PooledBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({"xml", "serialization", "binary"})
+    public String codec;
+
+    @Param
+    public MessageType type;
+
+    @Setup
+    public void setup() throws ParsingException {
+        Codec = MessageReadWrite.forName(codec);
+        Sample = SampleMessages.of(type);
+        ByteBuffer frame = Codec.encodeFrame(Sample);
+        Encoded = frame.slice(Integer.BYTES, frame.limit() - Integer.BYTES);
+        Message decoded = Codec.parse(Encoded.duplicate());
+        if (decoded.getType() != type) {
+            throw new IllegalStateException(codec + " decoded " + type + " as " + decoded.getType());
+        }
+    }
+
+    @Benchmark
+    public int encode() throws ParsingException {
+        PooledBuffer frame = Codec.encodeFrame(Sample, Pool);
+        int size = frame.buffer().limit();
+        frame.release();
+        return size;
+    }
+
+    @Benchmark
+    public Message parse() throws ParsingException {
+        return Codec.parse(Encoded.duplicate());
+    }
+
+    private MessageReadWrite Codec;
+    private Message Sample;
+    private ByteBuffer Encoded;
+    private final BufferPool Pool = new BufferPool(256, 16384, 64);
+}
@@ -0,0 +1,138 @@
+package messages.transport;
+
+import messages.Message;
+import messages.MessageType;
+import messages.SampleMessages;
+import messages.parsing.MessageReadWrite;
+import messages.parsing.ParsingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramingBenchmark {
+    @Param({"xml", "serialization", "binary"})
+    public String codec;
+
+    @Param({"1460", "16384"})
+    public int segment;
+
+    @Setup
+    public void setup() throws ParsingException {
+        Codec = MessageReadWrite.forName(codec);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < BATCH; ++i) {
+            stream.writeBytes(Codec.encodeFrame(SampleMessages.of(MessageType.CLIENT_MESSAGE)).array());
+        }
+        Channel = new SegmentedChannel(stream.toByteArray(), segment);
+        Decoder = new FrameDecoder(Pool, READ_SIZE, MAX_FRAME_SIZE);
+        Line = SampleMessages.of(MessageType.SERVER_MESSAGE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void split(Blackhole hole) throws IOException {
+        Channel.rewind();
+        while (Channel.hasRemaining()) {
+            Decoder.read(Channel, frame -> {
+                hole.consume(frame.remaining());
+                return true;
+            });
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void splitAndParse(Blackhole hole) throws IOException {
+        Channel.rewind();
+        while (Channel.hasRemaining()) {
+            Decoder.read(Channel, frame -> {
+                try {
+                    Message message = Codec.parse(frame);
+                    hole.consume(message);
+                    return true;
+                }
+                catch (ParsingException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public int encodeFrame() throws ParsingException {
+        PooledBuffer frame = Codec.encodeFrame(Line, Pool);
+        int size = frame.buffer().limit();
+        frame.release();
+        return size;
+    }
+
+    private static class SegmentedChannel implements ReadableByteChannel {
+        SegmentedChannel(byte[] bytes, int segment) {
+            Bytes = ByteBuffer.wrap(bytes);
+            SEGMENT = segment;
+        }
+
+        void rewind() {
+            Bytes.clear();
+        }
+
+        boolean hasRemaining() {
+            return Bytes.hasRemaining();
+        }
+
+        @Override
+        public int read(ByteBuffer destination) {
+            int count = Math.min(Math.min(SEGMENT, Bytes.remaining()), destination.remaining());
+            if (count == 0) {
+                return 0;
+            }
+            ByteBuffer chunk = Bytes.slice(Bytes.position(), count);
+            destination.put(chunk);
+            Bytes.position(Bytes.position() + count);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private final ByteBuffer Bytes;
+        private final int SEGMENT;
+    }
+
+    private static final int BATCH = 256;
+    private static final int READ_SIZE = 16384;
+    private static final int MAX_FRAME_SIZE = 1048576;
+    private final BufferPool Pool = new BufferPool(256, 16384, 64);
+    private MessageReadWrite Codec;
+    private SegmentedChannel Channel;
+    private Message Line;
+    private FrameDecoder Decoder;
+}
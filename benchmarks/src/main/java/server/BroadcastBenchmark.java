@@ -0,0 +1,73 @@
+package server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int sessions;
+
+    @Param({"xml", "binary"})
+    public String codec;
+
+    @Setup
+    public void setup() throws IOException {
+        ServerConfigurations.override(new String[] {
+                "codec=" + codec,
+                "logging=false",
+                "log_dir=" + Files.createTempDirectory("chat-benchmarks"),
+                "idle_timeout_ms=0",
+                "dispatch_queue_capacity=0",
+                "metrics_port=0",
+                "output_high_watermark=1073741824"
+        });
+        ControlServer = new Server(0);
+        Lobby = new Room(ControlServer, "benchmarks", null, BACKLOG);
+        Handlers = new ClientHandler[sessions];
+        for (int i = 0; i < sessions; ++i) {
+            Handlers[i] = new ClientHandler(null, ControlServer, UUID.randomUUID(), ExecutionMode.VIRTUAL);
+            Lobby.join(Handlers[i], null);
+        }
+    }
+
+    @Benchmark
+    public void publish() {
+        Lobby.publish(TEXT, NAME);
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() {
+        for (ClientHandler handler : Handlers) {
+            handler.discardOutput();
+        }
+    }
+
+    private static final int BACKLOG = 10;
+    private static final String TEXT = "the quick brown fox jumps over the lazy dog, and then does it again for good measure";
+    private static final String NAME = "alice";
+    private Server ControlServer;
+    private Room Lobby;
+    private ClientHandler[] Handlers;
+}
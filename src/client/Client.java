@@ -3,45 +3,67 @@ package client;
 import messages.*;
 import messages.parsing.MessageReadWrite;
 import messages.parsing.ParsingException;
-import messages.parsing.serialization.SerializationParser;
-import messages.parsing.xml.XMLParser;
+import messages.transport.BufferPool;
+import messages.transport.FrameDecoder;
+import messages.transport.MpscQueue;
+import messages.transport.OutboundFrame;
+import messages.transport.PooledBuffer;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
 import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class Client implements AutoCloseable {
-    private static final String CLIENT = "Client@21208_03";
+    private static final String CLIENT = Capability.advertise(
+            "Client@21208_03",
+            Capability.LIST_DELTA,
+            Capability.HEARTBEAT,
+            Capability.PRIVATE_MESSAGES,
+            Capability.RESYNC
+    );
     private static final int TIMEOUT = 100;
+    private static final Logger LOGGER = Logger.getLogger(Client.class.getName());
     private final MessageReadWrite PARSER;
+    private final BufferPool POOL = new BufferPool(256, 16384, 64);
+    private final FrameDecoder Decoder;
     public Client() throws IOException {
+        this(ClientConfig.getFieldValue(
+                ClientConfig.Field.CODEC,
+                Boolean.parseBoolean(ClientConfig.getFieldValue(ClientConfig.Field.XML)) ? "xml" : "serialization"
+        ));
+    }
+
+    public Client(String codec) throws IOException {
         IsAlive.set(false);
-        boolean XML = Boolean.parseBoolean(ClientConfig.getFieldValue(ClientConfig.Field.XML));
-        if (XML) {
-            PARSER = new XMLParser();
-        }
-        else {
-            PARSER = new SerializationParser();
-        }
+        int maxFrameBytes = Integer.parseInt(ClientConfig.getFieldValue(
+                ClientConfig.Field.MAX_FRAME_BYTES,
+                "16777216"
+        ));
+        PARSER = MessageReadWrite.forName(codec, maxFrameBytes);
+        Decoder = new FrameDecoder(POOL, 16384, maxFrameBytes);
+        PING_INTERVAL = Long.parseLong(ClientConfig.getFieldValue(ClientConfig.Field.PING_INTERVAL_MS, "15000"));
+        IDLE_TIMEOUT = Long.parseLong(ClientConfig.getFieldValue(ClientConfig.Field.IDLE_TIMEOUT_MS, "45000"));
     }
 
     public void start(String address, int port) throws Exception {
         if (!IsAlive.get()) {
             SockChannel = SocketChannel.open();
             SockChannel.connect(new InetSocketAddress(address, port));
+            IsAlive.set(true);
             Worker = new Thread(this::work);
             Worker.start();
-            IsAlive.set(true);
         }
     }
 
@@ -63,73 +85,41 @@ public class Client implements AutoCloseable {
             }
             SockChannel.configureBlocking(false);
             SelectionKey socketKey = SockChannel.register(selector, SelectionKey.OP_READ);
-            ByteBuffer sizeBuffer = ByteBuffer.allocate(4);
-            ByteBuffer messageBuffer = null;
-            boolean isReadingObject = false;
 
+            LastReceived = System.currentTimeMillis();
             while (IsAlive.get()) {
-                selector.select();
+                selector.select(TIMEOUT);
+                checkHeartbeat();
+                collectOutput();
                 var iter = selector.selectedKeys().iterator();
                 while (iter.hasNext()) {
                     SelectionKey key = iter.next();
                     iter.remove();
-                    if (key.isReadable()) {
-                        int readCode = 0;
-                        if (isReadingObject) {
-                            readCode = SockChannel.read(messageBuffer);
-                            if (!messageBuffer.hasRemaining()) {
-                                messageBuffer.position(0);
-                                isReadingObject = false;
-                                addInputMessage(messageBuffer);
-                                messageBuffer.clear();
-                                messageBuffer = null;
-                            }
-                        } else {
-                            readCode = SockChannel.read(sizeBuffer);
-                            if (!sizeBuffer.hasRemaining()) {
-                                sizeBuffer.position(0);
-                                isReadingObject = true;
-                                messageBuffer = ByteBuffer.allocate(sizeBuffer.getInt());
-                                sizeBuffer.clear();
-                            }
-                        }
-                        if (readCode == -1) {
-                            IsAlive.set(false);
-                            break;
-                        }
+                    if (key.isReadable() && Decoder.read(SockChannel, this::onFrame) == -1) {
+                        IsAlive.set(false);
+                        break;
                     }
-                    synchronized (outputQueue) {
-                        if (!outputQueue.isEmpty() && key.isWritable()) {
-                            ByteBuffer buffer = outputQueue.element();
-                            SockChannel.write(buffer);
-                            if (!buffer.hasRemaining()) {
-                                outputQueue.poll();
-                                if (outputQueue.isEmpty())
-                                    socketKey.interestOpsAnd(~SelectionKey.OP_WRITE);
-                            }
+                    if (!pendingWrites.isEmpty() && key.isWritable()) {
+                        OutboundFrame frame = pendingWrites.element();
+                        SockChannel.write(frame.buffer());
+                        if (!frame.buffer().hasRemaining()) {
+                            pendingWrites.poll().release();
+                            if (pendingWrites.isEmpty())
+                                socketKey.interestOpsAnd(~SelectionKey.OP_WRITE);
                         }
                     }
-                    Message message;
-                    synchronized (this) {
-                        synchronized (inputQueue) {
-                            message = inputQueue.poll();
-                        }
-                    }
-                    if (message != null) {
-                        handleMessage(message);
-                    }
                 }
-                synchronized (outputQueue) {
-                    if (!outputQueue.isEmpty()) {
-                        socketKey.interestOpsOr(SelectionKey.OP_WRITE);
-                    }
+                collectOutput();
+                if (!pendingWrites.isEmpty()) {
+                    socketKey.interestOpsOr(SelectionKey.OP_WRITE);
                 }
             }
         }
-        catch (IOException e) {
+        catch (IOException | CancelledKeyException e) {
             //...
         }
         finally {
+            Decoder.close();
             try {
                 close();
             } catch (Exception e) {
@@ -138,6 +128,19 @@ public class Client implements AutoCloseable {
         }
     }
 
+    private void checkHeartbeat() {
+        long now = System.currentTimeMillis();
+        long idle = now - LastReceived;
+        if (IDLE_TIMEOUT > 0 && idle >= IDLE_TIMEOUT) {
+            IsAlive.set(false);
+            return;
+        }
+        if (PING_INTERVAL > 0 && idle >= PING_INTERVAL && now - LastPing >= PING_INTERVAL) {
+            LastPing = now;
+            addOutputMessage(new Message(MessageType.CLIENT_PING, new Heartbeat(now)));
+        }
+    }
+
     private void handleMessage(Message message) {
         switch (message.getType()) {
             case SERVER_LOGIN_SUCCESS -> {
@@ -145,6 +148,7 @@ public class Client implements AutoCloseable {
                 USID = id.usid();
             }
             case SERVER_EMPTY_SUCCESS -> {  }
+            case SERVER_PING -> addOutputMessage(new Message(MessageType.CLIENT_PONG, message.getMessage()));
         }
         if (MessageListener != null) {
             MessageListener.accept(message);
@@ -159,6 +163,10 @@ public class Client implements AutoCloseable {
         CancelListener = runnable;
     }
 
+    public boolean isAlive() {
+        return IsAlive.get();
+    }
+
     public void login(String name) {
         if (IsAlive.get()) {
             addOutputMessage(new Message(
@@ -178,10 +186,56 @@ public class Client implements AutoCloseable {
     }
 
     public void sendMessage(String message) {
+        sendMessage(message, null);
+    }
+
+    public void sendMessage(String message, String room) {
         if (IsAlive.get()) {
             addOutputMessage(new Message(
                     MessageType.CLIENT_MESSAGE,
-                    new ClientMessage(message, USID)
+                    new ClientMessage(message, USID, room)
+            ));
+        }
+    }
+
+    public long sendPrivateMessage(String to, String message) {
+        long id = NextPrivateId.incrementAndGet();
+        if (IsAlive.get()) {
+            addOutputMessage(new Message(
+                    MessageType.CLIENT_PRIVATE_MESSAGE,
+                    new ClientPrivateMessage(to, message, id, USID)
+            ));
+        }
+        return id;
+    }
+
+    public void joinRoom(String room) {
+        if (IsAlive.get()) {
+            addOutputMessage(new Message(
+                    MessageType.CLIENT_JOIN_ROOM,
+                    new ClientRoom(room, USID)
+            ));
+        }
+    }
+
+    public void leaveRoom(String room) {
+        if (IsAlive.get()) {
+            addOutputMessage(new Message(
+                    MessageType.CLIENT_LEAVE_ROOM,
+                    new ClientRoom(room, USID)
+            ));
+        }
+    }
+
+    public void requestHistory(long before, int limit) {
+        requestHistory(before, limit, null);
+    }
+
+    public void requestHistory(long before, int limit, String room) {
+        if (IsAlive.get()) {
+            addOutputMessage(new Message(
+                    MessageType.CLIENT_HISTORY_REQUEST,
+                    new ClientHistoryRequest(before, limit, USID, room)
             ));
         }
     }
@@ -196,50 +250,84 @@ public class Client implements AutoCloseable {
     }
 
     public void addOutputMessage(Message message) {
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        PooledBuffer frame;
         try {
-            PARSER.encode(stream, message);
+            frame = PARSER.encodeFrame(message, POOL);
         } catch (ParsingException e) {
             IsAlive.set(false);
             return;
         }
-        byte[] bytes = stream.toByteArray();
-        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + Integer.BYTES);
-        buffer.putInt(bytes.length);
-        buffer.put(bytes);
-        buffer.position(0);
-        synchronized (outputQueue) {
-            outputQueue.offer(buffer);
-        }
-        synchronized (this) {
-            if (ListeningSelector == null) {
-                try {
-                    this.wait();
-                } catch (InterruptedException e) {
-                    IsAlive.set(false);
+        outputQueue.offer(OutboundFrame.of(frame));
+        if (WakeupPending.get() || !WakeupPending.compareAndSet(false, true)) {
+            return;
+        }
+        if (ListeningSelector == null) {
+            synchronized (this) {
+                while (ListeningSelector == null) {
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        IsAlive.set(false);
+                        return;
+                    }
                 }
             }
-            ListeningSelector.wakeup();
         }
+        ListeningSelector.wakeup();
     }
 
-    private void addInputMessage(ByteBuffer message) {
+    private void collectOutput() {
+        WakeupPending.set(false);
+        OutboundFrame frame;
+        while ((frame = outputQueue.poll()) != null) {
+            pendingWrites.offer(frame);
+        }
+    }
+
+    private boolean onFrame(ByteBuffer frame) {
+        LastReceived = System.currentTimeMillis();
+        Message message;
         try {
-            synchronized (inputQueue) {
-                inputQueue.offer(PARSER.parse(new ByteArrayInputStream(message.array())));
-            }
+            message = PARSER.parse(frame);
         } catch (ParsingException e) {
+            LOGGER.info("parser exception: " + e.getMessage());
+            IsAlive.set(false);
+            return false;
+        }
+        catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "parser failure", e);
+            IsAlive.set(false);
+            return false;
+        }
+        if (message == null) {
+            LOGGER.info("empty message from server");
+            IsAlive.set(false);
+            return false;
+        }
+        try {
+            handleMessage(message);
+        }
+        catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "cannot handle " + message.getType(), e);
             IsAlive.set(false);
+            return false;
         }
+        return IsAlive.get();
     }
 
-    private Selector ListeningSelector;
+    private final long PING_INTERVAL;
+    private final long IDLE_TIMEOUT;
+    private long LastReceived;
+    private long LastPing;
+    private volatile Selector ListeningSelector;
     private Runnable CancelListener;
     private Consumer<Message> MessageListener;
     private UUID USID;
     private final AtomicBoolean IsAlive = new AtomicBoolean(false);
+    private final AtomicLong NextPrivateId = new AtomicLong(0);
     private Thread Worker;
     private SocketChannel SockChannel;
-    private final Queue<ByteBuffer> outputQueue = new LinkedList<>();
-    private final Queue<Message> inputQueue = new LinkedList<>();
+    private final MpscQueue<OutboundFrame> outputQueue = new MpscQueue<>();
+    private final Queue<OutboundFrame> pendingWrites = new ArrayDeque<>();
+    private final AtomicBoolean WakeupPending = new AtomicBoolean(false);
 }
@@ -9,13 +9,26 @@ public class ClientConfig {
         return Fields.get(field);
     };
 
+    public static String getFieldValue(Field field, String defaultValue) {
+        String value = Fields.get(field);
+        return value == null ? defaultValue : value;
+    }
+
     public enum Field {
-        XML
+        XML,
+        CODEC,
+        MAX_FRAME_BYTES,
+        PING_INTERVAL_MS,
+        IDLE_TIMEOUT_MS
     }
 
     private static Field parseField(String field) {
         switch (field) {
             case ("XML") -> { return Field.XML; }
+            case ("codec") -> { return Field.CODEC; }
+            case ("max_frame_bytes") -> { return Field.MAX_FRAME_BYTES; }
+            case ("ping_interval_ms") -> { return Field.PING_INTERVAL_MS; }
+            case ("idle_timeout_ms") -> { return Field.IDLE_TIMEOUT_MS; }
 
             default -> throw new RuntimeException("Bad configuration file: " + ConfigFile);
         }
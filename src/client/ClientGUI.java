@@ -13,41 +13,170 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.Locale;
+import java.util.TreeMap;
 import java.util.Vector;
 
 public class ClientGUI {
     public ClientGUI(Client c) {
         client = c;
         sendButton.addActionListener(e -> {
-            client.sendMessage(textArea1.getText());
+            send(textArea1.getText());
             textArea1.setText("");
         });
+        JScrollPane messagesPane = (JScrollPane) SwingUtilities.getAncestorOfClass(JScrollPane.class, TextArea);
+        MessagesBar = messagesPane.getVerticalScrollBar();
+        MessagesBar.addAdjustmentListener(e -> {
+            if (!e.getValueIsAdjusting() && e.getValue() == MessagesBar.getMinimum()) {
+                requestOlderHistory();
+            }
+        });
     }
 
     public void onMessage(Message me) {
         switch (me.getType()) {
+            case SERVER_LOGIN_SUCCESS -> client.requestUserList();
             case SERVER_USER_LOGIN -> {
                 ServerUserName login = (ServerUserName) me.getMessage();
-                client.requestUserList();
                 TextArea.append("*** User " + login.name() + " joined us! ***\n");
             }
             case SERVER_USER_LOGOUT -> {
                 ServerUserName login = (ServerUserName) me.getMessage();
-                client.requestUserList();
                 TextArea.append("*** User " + login.name() + " left us all alone... ***\n");
             }
             case SERVER_LIST_RESPONSE -> {
                 ServerList serverList = (ServerList) me.getMessage();
                 DefaultListModel<String> listModel = new DefaultListModel<>();
                 for (var user : serverList.users()) {
-                    listModel.addElement(user.name() + ": " + user.client());
+                    listModel.addElement(user.name() + ": " + Capability.product(user.client()));
                 }
                 list1.setModel(listModel);
+                ListModel = listModel;
+                ListVersion = serverList.version();
+                PendingDeltas.headMap(ListVersion, true).clear();
+                applyPendingDeltas();
+            }
+            case SERVER_LIST_ADDED, SERVER_LIST_REMOVED -> {
+                ServerListDelta delta = (ServerListDelta) me.getMessage();
+                if (ListModel == null || delta.version() > ListVersion) {
+                    PendingDeltas.put(delta.version(), me);
+                    applyPendingDeltas();
+                }
             }
             case SERVER_MESSAGE -> {
                 ServerMessage message = (ServerMessage) me.getMessage();
-                TextArea.append(message.name() + ": " + message.message() + "\n");
+                if (isDefaultRoom(message.room()) && message.id() >= 0 && (OldestId < 0 || message.id() < OldestId)) {
+                    OldestId = message.id();
+                }
+                TextArea.append(format(message));
+            }
+            case SERVER_PRIVATE_MESSAGE -> {
+                ServerPrivateMessage message = (ServerPrivateMessage) me.getMessage();
+                TextArea.append("<- " + message.from() + ": " + message.message() + "\n");
+            }
+            case SERVER_PRIVATE_RECEIPT -> {
+                ServerPrivateReceipt receipt = (ServerPrivateReceipt) me.getMessage();
+                if (receipt.status() != ServerPrivateReceipt.Status.DELIVERED) {
+                    TextArea.append("*** Message to " + receipt.to() + " " + receipt.status().name().toLowerCase() + " ***\n");
+                }
+            }
+            case SERVER_RESYNC -> {
+                ServerResync resync = (ServerResync) me.getMessage();
+                TextArea.append("*** Connection was too slow, " + resync.dropped() + " messages were skipped ***\n");
+            }
+            case SERVER_ROOM_JOINED -> {
+                ServerRoomEvent event = (ServerRoomEvent) me.getMessage();
+                TextArea.append("*** User " + event.name() + " joined #" + event.room() + " ***\n");
+            }
+            case SERVER_ROOM_LEFT -> {
+                ServerRoomEvent event = (ServerRoomEvent) me.getMessage();
+                TextArea.append("*** User " + event.name() + " left #" + event.room() + " ***\n");
+            }
+            case SERVER_HISTORY_RESPONSE -> {
+                ServerHistory history = (ServerHistory) me.getMessage();
+                StringBuilder text = new StringBuilder();
+                for (ServerMessage message : history.messages()) {
+                    text.append(format(message));
+                    if (OldestId < 0 || message.id() < OldestId) {
+                        OldestId = message.id();
+                    }
+                }
+                HasMoreHistory = !history.messages().isEmpty() && OldestId > 0;
+                SwingUtilities.invokeLater(() -> {
+                    int height = MessagesBar.getMaximum();
+                    TextArea.insert(text.toString(), 0);
+                    SwingUtilities.invokeLater(() -> MessagesBar.setValue(MessagesBar.getMaximum() - height));
+                    HistoryPending = false;
+                });
+            }
+        }
+    }
+
+    private void send(String text) {
+        String[] words = text.strip().split("\\s+", 3);
+        switch (words[0]) {
+            case "/join" -> {
+                if (words.length > 1) {
+                    client.joinRoom(words[1]);
+                }
+            }
+            case "/leave" -> {
+                if (words.length > 1) {
+                    client.leaveRoom(words[1]);
+                }
             }
+            case "/msg" -> {
+                if (words.length > 2) {
+                    client.sendPrivateMessage(words[1], words[2]);
+                    TextArea.append("-> " + words[1] + ": " + words[2] + "\n");
+                }
+            }
+            case "/room" -> {
+                if (words.length > 2) {
+                    client.sendMessage(words[2], words[1]);
+                }
+            }
+            default -> client.sendMessage(text);
+        }
+    }
+
+    private static String format(ServerMessage message) {
+        String prefix = isDefaultRoom(message.room()) ? "" : "#" + message.room() + " ";
+        return prefix + message.name() + ": " + message.message() + "\n";
+    }
+
+    private static boolean isDefaultRoom(String room) {
+        return room == null || room.equals(ClientRoom.DEFAULT_ROOM);
+    }
+
+    private void requestOlderHistory() {
+        if (HistoryPending || !HasMoreHistory || OldestId <= 0) {
+            return;
+        }
+        HistoryPending = true;
+        client.requestHistory(OldestId, HISTORY_PAGE);
+    }
+
+    private void applyPendingDeltas() {
+        if (ListModel == null) {
+            return;
+        }
+        Message next;
+        while ((next = PendingDeltas.remove(ListVersion + 1)) != null) {
+            ServerListDelta delta = (ServerListDelta) next.getMessage();
+            String entry = delta.user().name() + ": " + Capability.product(delta.user().client());
+            if (next.getType() == MessageType.SERVER_LIST_ADDED) {
+                if (!ListModel.contains(entry)) {
+                    ListModel.addElement(entry);
+                }
+            }
+            else {
+                ListModel.removeElement(entry);
+            }
+            ListVersion = delta.version();
+        }
+        if (PendingDeltas.size() > MAX_PENDING_DELTAS) {
+            PendingDeltas.clear();
+            client.requestUserList();
         }
     }
 
@@ -56,6 +185,15 @@ public class ClientGUI {
     }
 
     private final Client client;
+    private DefaultListModel<String> ListModel;
+    private long ListVersion = -1;
+    private final TreeMap<Long, Message> PendingDeltas = new TreeMap<>();
+    private static final int MAX_PENDING_DELTAS = 64;
+    private final JScrollBar MessagesBar;
+    private volatile long OldestId = -1;
+    private volatile boolean HasMoreHistory = true;
+    private volatile boolean HistoryPending = false;
+    private static final int HISTORY_PAGE = 50;
     private JPanel MainPanel;
     private JList<String> list1;
     private JTextArea TextArea;
@@ -0,0 +1,219 @@
+package load;
+
+import client.Client;
+import messages.Message;
+import messages.ServerMessage;
+import messages.ServerResync;
+import server.ExecutionMode;
+import server.Server;
+import server.ServerConfigurations;
+import server.metrics.Histogram;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoadGenerator {
+    public LoadGenerator(Map<String, String> settings) {
+        HOST = settings.getOrDefault("host", "127.0.0.1");
+        PORT = Integer.parseInt(settings.getOrDefault("port", "5656"));
+        CODEC = settings.getOrDefault("codec", "xml");
+        SESSIONS = Integer.parseInt(settings.getOrDefault("sessions", "1000"));
+        SENDERS = Math.min(SESSIONS, Integer.parseInt(settings.getOrDefault("senders", "10")));
+        RATE = Double.parseDouble(settings.getOrDefault("rate", "100"));
+        MESSAGE_BYTES = Integer.parseInt(settings.getOrDefault("message_bytes", "128"));
+        WARMUP_MS = TimeUnit.SECONDS.toMillis(Long.parseLong(settings.getOrDefault("warmup_s", "5")));
+        DURATION_MS = TimeUnit.SECONDS.toMillis(Long.parseLong(settings.getOrDefault("duration_s", "30")));
+        LOGIN_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(Long.parseLong(settings.getOrDefault("login_timeout_s", "60")));
+        REPORT = settings.getOrDefault("report", "load-report.txt");
+        EMBEDDED = Boolean.parseBoolean(settings.getOrDefault("embedded", "false"));
+        EXECUTION = settings.getOrDefault("execution", "reactor");
+        RUN = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+        Padding = "x".repeat(Math.max(0, MESSAGE_BYTES - RUN.length() - 21));
+        Logins = new CountDownLatch(SESSIONS);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new HashMap<>();
+        for (String setting : args) {
+            String[] pair = setting.split("\\s*=\\s*", 2);
+            if (pair.length < 2 || !SETTINGS.contains(pair[0])) {
+                throw new RuntimeException("bad setting " + setting + ", expected key=value with key one of " + SETTINGS);
+            }
+            settings.put(pair[0], pair[1]);
+        }
+        new LoadGenerator(settings).run();
+        System.exit(0);
+    }
+
+    public void run() throws Exception {
+        if (EMBEDDED) {
+            startServer();
+        }
+        connect();
+        if (!Logins.await(LOGIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            System.out.println("only " + (SESSIONS - Logins.getCount()) + " of " + SESSIONS + " sessions logged in, continuing");
+        }
+        LoggedIn = SESSIONS - Logins.getCount();
+        List<Client> senders = Sessions.subList(0, SENDERS);
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        long started = System.nanoTime();
+        MeasureFrom = started + TimeUnit.MILLISECONDS.toNanos(WARMUP_MS);
+        MeasureUntil = MeasureFrom + TimeUnit.MILLISECONDS.toNanos(DURATION_MS);
+        ticker.scheduleAtFixedRate(() -> send(senders, started), 0, TICK_MS, TimeUnit.MILLISECONDS);
+        TimeUnit.NANOSECONDS.sleep(MeasureUntil - System.nanoTime());
+        ticker.shutdownNow();
+        ticker.awaitTermination(1, TimeUnit.SECONDS);
+        Thread.sleep(DRAIN_MS);
+        report();
+        for (Client client : Sessions) {
+            client.close();
+        }
+        if (Embedded != null) {
+            Embedded.interrupt();
+        }
+    }
+
+    private void startServer() throws InterruptedException {
+        ServerConfigurations.override(new String[] {"codec=" + CODEC, "logging=false", "execution=" + EXECUTION});
+        Server server = new Server(PORT);
+        Execution = server.getExecutionMode();
+        Embedded = new Thread(server::start, "embedded-server");
+        Embedded.setDaemon(true);
+        Embedded.start();
+        while (!server.isRunning()) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(EMBEDDED_STARTUP_MS);
+    }
+
+    private void connect() throws Exception {
+        long started = System.nanoTime();
+        for (int i = 0; i < SESSIONS; ++i) {
+            Client client = new Client(CODEC);
+            client.setMessageListener(this::onMessage);
+            client.setCloseListener(Disconnects::increment);
+            client.start(HOST, PORT);
+            client.login("load-" + RUN + "-" + i);
+            Sessions.add(client);
+        }
+        System.out.println("opened " + SESSIONS + " sessions in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+    }
+
+    private void send(List<Client> senders, long started) {
+        long now = System.nanoTime();
+        long due = (long) ((now - started) / 1e9 * RATE);
+        while (Sent < due) {
+            Client client = senders.get((int) (Sent % senders.size()));
+            long stamp = System.nanoTime();
+            client.sendMessage(RUN + " " + stamp + " " + Padding);
+            if (stamp >= MeasureFrom && stamp < MeasureUntil) {
+                Measured.increment();
+            }
+            ++Sent;
+        }
+    }
+
+    private void onMessage(Message message) {
+        switch (message.getType()) {
+            case SERVER_LOGIN_SUCCESS -> Logins.countDown();
+            case SERVER_MESSAGE -> {
+                long received = System.nanoTime();
+                String text = ((ServerMessage) message.getMessage()).message();
+                if (!text.startsWith(RUN)) {
+                    return;
+                }
+                int end = text.indexOf(' ', RUN.length() + 1);
+                long sent = Long.parseLong(text, RUN.length() + 1, end, 10);
+                if (sent >= MeasureFrom && sent < MeasureUntil) {
+                    Latency.record(TimeUnit.NANOSECONDS.toMicros(received - sent));
+                }
+            }
+            case SERVER_ERROR -> Errors.increment();
+            case SERVER_RESYNC -> Skipped.add(((ServerResync) message.getMessage()).dropped());
+        }
+    }
+
+    private void report() throws IOException {
+        double seconds = DURATION_MS / 1000.0;
+        long measured = Measured.sum();
+        long delivered = Latency.getCount();
+        long expected = measured * LoggedIn;
+        StringBuilder report = new StringBuilder();
+        report.append("run: ").append(RUN).append(" at ").append(Instant.now()).append('\n');
+        report.append("server: ").append(HOST).append(':').append(PORT).append(EMBEDDED ? " (embedded)" : "").append('\n');
+        report.append("codec: ").append(CODEC).append('\n');
+        if (Execution != null) {
+            report.append("execution: ").append(Execution.name().toLowerCase()).append('\n');
+        }
+        report.append("sessions: ").append(SESSIONS).append(" logged in: ").append(LoggedIn).append(" senders: ").append(SENDERS).append('\n');
+        report.append("target rate: ").append(RATE).append(" msg/s, message: ").append(MESSAGE_BYTES).append(" bytes\n");
+        report.append("warmup: ").append(WARMUP_MS).append(" ms, measured: ").append(DURATION_MS).append(" ms\n");
+        report.append(String.format("sent: %d (%.1f msg/s)%n", measured, measured / seconds));
+        report.append(String.format("delivered: %d of %d expected (%.1f msg/s, %.2f%% missing)%n",
+                delivered, expected, delivered / seconds, expected == 0 ? 0 : 100.0 * (expected - Math.min(expected, delivered)) / expected));
+        report.append("fan-out latency us: p50=").append(Latency.getValueAtPercentile(50))
+                .append(" p90=").append(Latency.getValueAtPercentile(90))
+                .append(" p99=").append(Latency.getValueAtPercentile(99))
+                .append(" p999=").append(Latency.getValueAtPercentile(99.9))
+                .append(" max=").append(Latency.getMax())
+                .append(String.format(" mean=%.1f", Latency.getMean())).append('\n');
+        report.append("server errors: ").append(Errors.sum()).append('\n');
+        report.append("skipped by server (resync): ").append(Skipped.sum()).append('\n');
+        report.append("disconnects: ").append(Disconnects.sum()).append('\n');
+        System.out.print(report);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Path.of(REPORT)))) {
+            out.print(report);
+        }
+        System.out.println("report written to " + REPORT);
+    }
+
+    private final String HOST;
+    private final int PORT;
+    private final String CODEC;
+    private final int SESSIONS;
+    private final int SENDERS;
+    private final double RATE;
+    private final int MESSAGE_BYTES;
+    private final long WARMUP_MS;
+    private final long DURATION_MS;
+    private final long LOGIN_TIMEOUT_MS;
+    private final String REPORT;
+    private final boolean EMBEDDED;
+    private final String EXECUTION;
+    private final String RUN;
+    private final String Padding;
+    private final CountDownLatch Logins;
+    private final List<Client> Sessions = new ArrayList<>();
+    private final Histogram Latency = new Histogram();
+    private final LongAdder Measured = new LongAdder();
+    private final LongAdder Errors = new LongAdder();
+    private final LongAdder Skipped = new LongAdder();
+    private final LongAdder Disconnects = new LongAdder();
+    private volatile long MeasureFrom;
+    private volatile long MeasureUntil;
+    private long LoggedIn;
+    private long Sent = 0;
+    private Thread Embedded;
+    private ExecutionMode Execution;
+    private static final long TICK_MS = 5;
+    private static final long DRAIN_MS = 2000;
+    private static final long EMBEDDED_STARTUP_MS = 200;
+    private static final Set<String> SETTINGS = Set.of(
+            "host", "port", "codec", "sessions", "senders", "rate", "message_bytes",
+            "warmup_s", "duration_s", "login_timeout_s", "report", "embedded", "execution"
+    );
+}
@@ -0,0 +1,53 @@
+package messages;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+public enum Capability {
+    LIST_DELTA("list-delta"),
+    HEARTBEAT("heartbeat"),
+    PRIVATE_MESSAGES("private-messages"),
+    RESYNC("resync");
+
+    Capability(String token) {
+        TOKEN = token;
+    }
+
+    public String getToken() {
+        return TOKEN;
+    }
+
+    public static String advertise(String client, Capability... capabilities) {
+        StringBuilder out = new StringBuilder(client);
+        char separator = SEPARATOR;
+        for (Capability capability : capabilities) {
+            out.append(separator).append(capability.TOKEN);
+            separator = ',';
+        }
+        return out.toString();
+    }
+
+    public static Set<Capability> parse(String client) {
+        Set<Capability> capabilities = EnumSet.noneOf(Capability.class);
+        int start = client == null ? -1 : client.indexOf(SEPARATOR);
+        if (start < 0) {
+            return capabilities;
+        }
+        for (String token : client.substring(start + 1).split(",")) {
+            for (Capability capability : values()) {
+                if (capability.TOKEN.equals(token.trim())) {
+                    capabilities.add(capability);
+                }
+            }
+        }
+        return capabilities;
+    }
+
+    public static String product(String client) {
+        int end = client == null ? -1 : client.indexOf(SEPARATOR);
+        return end < 0 ? client : client.substring(0, end);
+    }
+
+    private final String TOKEN;
+    private static final char SEPARATOR = ';';
+}
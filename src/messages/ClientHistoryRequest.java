@@ -0,0 +1,24 @@
+package messages;
+
+import messages.parsing.xml.XMLParsable;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Serializable;
+import java.util.UUID;
+
+public record ClientHistoryRequest(long before, int limit, UUID usid, String room) implements Serializable, XMLParsable {
+    public ClientHistoryRequest(long before, int limit, UUID usid) {
+        this(before, limit, usid, null);
+    }
+
+    @Override
+    public void parse(XMLStreamWriter writer) throws XMLStreamException {
+        XMLParsable.addTextNode("session", usid.toString(), writer);
+        XMLParsable.addTextNode("before", Long.toString(before), writer);
+        XMLParsable.addTextNode("limit", Integer.toString(limit), writer);
+        if (room != null) {
+            XMLParsable.addTextNode("room", room, writer);
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package messages;
 
 import messages.parsing.xml.XMLParsable;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.Serializable;
 import java.util.UUID;
 
-public record ClientMessage(String message, UUID usid) implements Serializable, XMLParsable {
+public record ClientMessage(String message, UUID usid, String room) implements Serializable, XMLParsable {
+    public ClientMessage(String message, UUID usid) {
+        this(message, usid, null);
+    }
+
     @Override
-    public void parse(Document doc, Node main) {
-        XMLParsable.addTextNode("message", message, main, doc);
-        XMLParsable.addTextNode("session", usid.toString(), main, doc);
+    public void parse(XMLStreamWriter writer) throws XMLStreamException {
+        XMLParsable.addTextNode("message", message, writer);
+        XMLParsable.addTextNode("session", usid.toString(), writer);
+        if (room != null) {
+            XMLParsable.addTextNode("room", room, writer);
+        }
     }
 }
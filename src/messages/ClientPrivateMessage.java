@@ -0,0 +1,18 @@
+package messages;
+
+import messages.parsing.xml.XMLParsable;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Serializable;
+import java.util.UUID;
+
+public record ClientPrivateMessage(String to, String message, long id, UUID usid) implements Serializable, XMLParsable {
+    @Override
+    public void parse(XMLStreamWriter writer) throws XMLStreamException {
+        XMLParsable.addTextNode("to", to, writer);
+        XMLParsable.addTextNode("message", message, writer);
+        XMLParsable.addTextNode("id", Long.toString(id), writer);
+        XMLParsable.addTextNode("session", usid.toString(), writer);
+    }
+}
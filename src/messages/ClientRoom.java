@@ -0,0 +1,18 @@
+package messages;
+
+import messages.parsing.xml.XMLParsable;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Serializable;
+import java.util.UUID;
+
+public record ClientRoom(String room, UUID usid) implements Serializable, XMLParsable {
+    public static final String DEFAULT_ROOM = "general";
+
+    @Override
+    public void parse(XMLStreamWriter writer) throws XMLStreamException {
+        XMLParsable.addTextNode("session", usid.toString(), writer);
+        XMLParsable.addTextNode("room", room, writer);
+    }
+}
@@ -0,0 +1,14 @@
+package messages;
+
+import messages.parsing.xml.XMLParsable;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Serializable;
+
+public record Heartbeat(long nonce) implements Serializable, XMLParsable {
+    @Override
+    public void parse(XMLStreamWriter writer) throws XMLStreamException {
+        XMLParsable.addTextNode("nonce", Long.toString(nonce()), writer);
+    }
+}
@@ -11,5 +11,25 @@ public enum MessageType {
     SERVER_EMPTY_SUCCESS,
     CLIENT_LOGOUT,
     SERVER_USER_LOGIN,
-    SERVER_USER_LOGOUT
+    SERVER_USER_LOGOUT,
+    SERVER_LIST_ADDED,
+    SERVER_LIST_REMOVED,
+    CLIENT_HISTORY_REQUEST,
+    SERVER_HISTORY_RESPONSE,
+    CLIENT_JOIN_ROOM,
+    CLIENT_LEAVE_ROOM,
+    SERVER_ROOM_JOINED,
+    SERVER_ROOM_LEFT,
+    CLIENT_PRIVATE_MESSAGE,
+    SERVER_PRIVATE_MESSAGE,
+    SERVER_PRIVATE_RECEIPT,
+    SERVER_RESYNC,
+    CLIENT_PING,
+    CLIENT_PONG,
+    SERVER_PING,
+    SERVER_PONG;
+
+    public boolean isFromClient() {
+        return name().startsWith("CLIENT_");
+    }
 }
@@ -1,15 +1,15 @@
 package messages;
 
 import messages.parsing.xml.XMLParsable;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.Serializable;
 import java.util.UUID;
 
 public record ServerClientSessionID(UUID usid) implements Serializable, XMLParsable {
     @Override
-    public void parse(Document doc, Node main) {
-        XMLParsable.addTextNode("session", usid().toString(), main, doc);
+    public void parse(XMLStreamWriter writer) throws XMLStreamException {
+        XMLParsable.addTextNode("session", usid().toString(), writer);
     }
 }
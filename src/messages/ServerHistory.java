@@ -0,0 +1,25 @@
+package messages;
+
+import messages.parsing.xml.XMLParsable;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+public record ServerHistory(ArrayList<ServerMessage> messages) implements Serializable, XMLParsable {
+    @Override
+    public void parse(XMLStreamWriter writer) throws XMLStreamException {
+        if (messages().isEmpty()) {
+            writer.writeEmptyElement("history");
+            return;
+        }
+        writer.writeStartElement("history");
+        for (var message : messages()) {
+            writer.writeStartElement("entry");
+            message.parse(writer);
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+    }
+}
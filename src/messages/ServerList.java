@@ -1,21 +1,31 @@
 package messages;
 
 import messages.parsing.xml.XMLParsable;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
 
-public record ServerList(ArrayList<ClientLogin> users) implements Serializable, XMLParsable {
+public record ServerList(ArrayList<ClientLogin> users, long version) implements Serializable, XMLParsable {
+    public ServerList(ArrayList<ClientLogin> users) {
+        this(users, 0);
+    }
+
     @Override
-    public void parse(Document doc, Node main) {
-        Node listusers = doc.createElement("listusers");
+    public void parse(XMLStreamWriter writer) throws XMLStreamException {
+        if (users().isEmpty()) {
+            writer.writeEmptyElement("listusers");
+            writer.writeAttribute("version", Long.toString(version()));
+            return;
+        }
+        writer.writeStartElement("listusers");
+        writer.writeAttribute("version", Long.toString(version()));
         for (var user : users()) {
-            Node u = doc.createElement("user");
-            user.parse(doc, u);
-            listusers.appendChild(u);
+            writer.writeStartElement("user");
+            user.parse(writer);
+            writer.writeEndElement();
         }
-        main.appendChild(listusers);
+        writer.writeEndElement();
     }
 }
@@ -0,0 +1,15 @@
+package messages;
+
+import messages.parsing.xml.XMLParsable;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Serializable;
+
+public record ServerListDelta(ClientLogin user, long version) implements Serializable, XMLParsable {
+    @Override
+    public void parse(XMLStreamWriter writer) throws XMLStreamException {
+        user().parse(writer);
+        XMLParsable.addTextNode("version", Long.toString(version()), writer);
+    }
+}
@@ -1,16 +1,29 @@
 package messages;
 
 import messages.parsing.xml.XMLParsable;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.Serializable;
-import java.util.UUID;
 
-public record ServerMessage(String message, String name) implements Serializable, XMLParsable {
+public record ServerMessage(String message, String name, long id, String room) implements Serializable, XMLParsable {
+    public ServerMessage(String message, String name, long id) {
+        this(message, name, id, null);
+    }
+
+    public ServerMessage(String message, String name) {
+        this(message, name, -1);
+    }
+
     @Override
-    public void parse(Document doc, Node main) {
-        XMLParsable.addTextNode("message", message(), main, doc);
-        XMLParsable.addTextNode("name", name(), main, doc);
+    public void parse(XMLStreamWriter writer) throws XMLStreamException {
+        XMLParsable.addTextNode("message", message(), writer);
+        XMLParsable.addTextNode("name", name(), writer);
+        if (id() >= 0) {
+            XMLParsable.addTextNode("id", Long.toString(id()), writer);
+        }
+        if (room() != null) {
+            XMLParsable.addTextNode("room", room(), writer);
+        }
     }
 }
@@ -0,0 +1,17 @@
+package messages;
+
+import messages.parsing.xml.XMLParsable;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Serializable;
+
+public record ServerPrivateMessage(String from, String message, long id, long timestamp) implements Serializable, XMLParsable {
+    @Override
+    public void parse(XMLStreamWriter writer) throws XMLStreamException {
+        XMLParsable.addTextNode("from", from(), writer);
+        XMLParsable.addTextNode("message", message(), writer);
+        XMLParsable.addTextNode("id", Long.toString(id()), writer);
+        XMLParsable.addTextNode("time", Long.toString(timestamp()), writer);
+    }
+}
@@ -0,0 +1,22 @@
+package messages;
+
+import messages.parsing.xml.XMLParsable;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Serializable;
+
+public record ServerPrivateReceipt(String to, long id, Status status) implements Serializable, XMLParsable {
+    public enum Status {
+        DELIVERED,
+        STORED,
+        REJECTED
+    }
+
+    @Override
+    public void parse(XMLStreamWriter writer) throws XMLStreamException {
+        XMLParsable.addTextNode("to", to(), writer);
+        XMLParsable.addTextNode("id", Long.toString(id()), writer);
+        XMLParsable.addTextNode("status", status().name().toLowerCase(), writer);
+    }
+}
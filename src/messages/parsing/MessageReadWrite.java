@@ -1,11 +1,64 @@
 package messages.parsing;
 
 import messages.Message;
+import messages.parsing.binary.BinaryParser;
+import messages.parsing.serialization.SerializationParser;
+import messages.parsing.xml.XMLParser;
+import messages.transport.BufferPool;
+import messages.transport.ByteBufferInputStream;
+import messages.transport.ByteBufferOutputStream;
+import messages.transport.PooledBuffer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 public interface MessageReadWrite {
+    int FRAME_HINT = 512;
+
     Message parse(InputStream in) throws ParsingException;
     void encode(OutputStream out, Message message) throws ParsingException;
+
+    default ByteBuffer encodeFrame(Message message) throws ParsingException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.writeBytes(new byte[Integer.BYTES]);
+        encode(stream, message);
+        ByteBuffer buffer = ByteBuffer.wrap(stream.toByteArray());
+        buffer.putInt(0, buffer.limit() - Integer.BYTES);
+        return buffer;
+    }
+
+    default PooledBuffer encodeFrame(Message message, BufferPool pool) throws ParsingException {
+        ByteBufferOutputStream stream = new ByteBufferOutputStream(pool, FRAME_HINT);
+        stream.skip(Integer.BYTES);
+        try {
+            encode(stream, message);
+        }
+        catch (ParsingException | RuntimeException e) {
+            stream.toPooledBuffer().release();
+            throw e;
+        }
+        PooledBuffer frame = stream.toPooledBuffer();
+        frame.buffer().putInt(0, frame.buffer().limit() - Integer.BYTES);
+        return frame;
+    }
+
+    default Message parse(ByteBuffer frame) throws ParsingException {
+        return parse(new ByteBufferInputStream(frame));
+    }
+
+    static MessageReadWrite forName(String codec) {
+        return forName(codec, BinaryParser.DEFAULT_MAX_FRAME_BYTES);
+    }
+
+    static MessageReadWrite forName(String codec, int maxFrameBytes) {
+        switch (codec) {
+            case ("xml") -> { return new XMLParser(); }
+            case ("serialization") -> { return new SerializationParser(); }
+            case ("binary") -> { return new BinaryParser(maxFrameBytes); }
+
+            default -> throw new RuntimeException("unknown codec: " + codec);
+        }
+    }
 }
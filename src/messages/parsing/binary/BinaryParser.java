@@ -0,0 +1,269 @@
+package messages.parsing.binary;
+
+import messages.*;
+import messages.parsing.MessageReadWrite;
+import messages.parsing.ParsingException;
+import messages.transport.ByteBufferInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.UUID;
+
+public class BinaryParser implements MessageReadWrite {
+    private static final MessageType[] TYPES = MessageType.values();
+    private static final ServerPrivateReceipt.Status[] STATUSES = ServerPrivateReceipt.Status.values();
+    private static final ThreadLocal<BinaryWriter> WRITER = ThreadLocal.withInitial(BinaryWriter::new);
+    public static final int DEFAULT_MAX_FRAME_BYTES = 16777216;
+
+    public BinaryParser() {
+        this(DEFAULT_MAX_FRAME_BYTES);
+    }
+
+    public BinaryParser(int maxFrameBytes) {
+        MaxFrameBytes = maxFrameBytes;
+    }
+
+    @Override
+    public Message parse(InputStream in) throws ParsingException {
+        return parse(in, MaxFrameBytes);
+    }
+
+    @Override
+    public Message parse(ByteBuffer frame) throws ParsingException {
+        return parse(new ByteBufferInputStream(frame), frame.remaining());
+    }
+
+    public Message parse(InputStream in, int frameLength) throws ParsingException {
+        try {
+            BinaryReader reader = new BinaryReader(in, frameLength);
+            int tag = reader.readByte();
+            if (tag >= TYPES.length) {
+                throw new ParsingException("unrecognized message type " + tag);
+            }
+            MessageType type = TYPES[tag];
+            switch (type) {
+                case SERVER_ERROR -> {
+                    return new Message(type, new ServerError(reader.readString()));
+                }
+                case CLIENT_LOGIN -> {
+                    return new Message(type, new ClientLogin(reader.readString(), reader.readString()));
+                }
+                case SERVER_LOGIN_SUCCESS, CLIENT_LIST_REQUEST, CLIENT_LOGOUT -> {
+                    return new Message(type, new ServerClientSessionID(reader.readUUID()));
+                }
+                case SERVER_LIST_RESPONSE -> {
+                    long version = reader.readLong();
+                    int count = reader.readCount();
+                    ArrayList<ClientLogin> logins = new ArrayList<>();
+                    for (int i = 0; i < count; ++i) {
+                        logins.add(new ClientLogin(reader.readString(), reader.readString()));
+                    }
+                    return new Message(type, new ServerList(logins, version));
+                }
+                case CLIENT_MESSAGE -> {
+                    String text = reader.readString();
+                    UUID usid = reader.readUUID();
+                    return new Message(type, new ClientMessage(text, usid, reader.readString()));
+                }
+                case SERVER_MESSAGE -> {
+                    return new Message(type, readServerMessage(reader));
+                }
+                case SERVER_EMPTY_SUCCESS -> {
+                    return new Message(type, null);
+                }
+                case SERVER_USER_LOGIN, SERVER_USER_LOGOUT -> {
+                    return new Message(type, new ServerUserName(reader.readString()));
+                }
+                case SERVER_LIST_ADDED, SERVER_LIST_REMOVED -> {
+                    ClientLogin login = new ClientLogin(reader.readString(), reader.readString());
+                    return new Message(type, new ServerListDelta(login, reader.readLong()));
+                }
+
+                case CLIENT_HISTORY_REQUEST -> {
+                    long before = reader.readLong();
+                    int limit = reader.readVarInt();
+                    UUID usid = reader.readUUID();
+                    return new Message(type, new ClientHistoryRequest(before, limit, usid, reader.readString()));
+                }
+                case SERVER_HISTORY_RESPONSE -> {
+                    int count = reader.readCount();
+                    ArrayList<ServerMessage> messages = new ArrayList<>();
+                    for (int i = 0; i < count; ++i) {
+                        messages.add(readServerMessage(reader));
+                    }
+                    return new Message(type, new ServerHistory(messages));
+                }
+                case CLIENT_JOIN_ROOM, CLIENT_LEAVE_ROOM -> {
+                    String room = reader.readString();
+                    return new Message(type, new ClientRoom(room, reader.readUUID()));
+                }
+                case SERVER_ROOM_JOINED, SERVER_ROOM_LEFT -> {
+                    return new Message(type, new ServerRoomEvent(reader.readString(), reader.readString()));
+                }
+                case CLIENT_PRIVATE_MESSAGE -> {
+                    String to = reader.readString();
+                    String text = reader.readString();
+                    long id = reader.readLong();
+                    return new Message(type, new ClientPrivateMessage(to, text, id, reader.readUUID()));
+                }
+                case SERVER_PRIVATE_MESSAGE -> {
+                    String from = reader.readString();
+                    String text = reader.readString();
+                    long id = reader.readLong();
+                    return new Message(type, new ServerPrivateMessage(from, text, id, reader.readLong()));
+                }
+                case SERVER_PRIVATE_RECEIPT -> {
+                    String to = reader.readString();
+                    long id = reader.readLong();
+                    int status = reader.readByte();
+                    if (status >= STATUSES.length) {
+                        throw new ParsingException("unrecognized receipt status " + status);
+                    }
+                    return new Message(type, new ServerPrivateReceipt(to, id, STATUSES[status]));
+                }
+                case SERVER_RESYNC -> {
+                    return new Message(type, new ServerResync(reader.readLong()));
+                }
+                case CLIENT_PING, CLIENT_PONG, SERVER_PING, SERVER_PONG -> {
+                    return new Message(type, new Heartbeat(reader.readLong()));
+                }
+
+                default -> throw new ParsingException("unrecognized message type " + type);
+            }
+        }
+        catch (IOException e) {
+            throw new ParsingException(e);
+        }
+    }
+
+    @Override
+    public void encode(OutputStream out, Message message) throws ParsingException {
+        BinaryWriter writer = WRITER.get();
+        writer.reset();
+        try {
+            writer.writeByte(message.getType().ordinal());
+            switch (message.getType()) {
+                case SERVER_ERROR -> {
+                    ServerError error = (ServerError) message.getMessage();
+                    writer.writeString(error.message());
+                }
+                case CLIENT_LOGIN -> {
+                    ClientLogin login = (ClientLogin) message.getMessage();
+                    writer.writeString(login.name());
+                    writer.writeString(login.client());
+                }
+                case SERVER_LOGIN_SUCCESS, CLIENT_LIST_REQUEST, CLIENT_LOGOUT -> {
+                    ServerClientSessionID id = (ServerClientSessionID) message.getMessage();
+                    writer.writeUUID(id.usid());
+                }
+                case SERVER_LIST_RESPONSE -> {
+                    ServerList list = (ServerList) message.getMessage();
+                    writer.writeLong(list.version());
+                    writer.writeVarInt(list.users().size());
+                    for (ClientLogin login : list.users()) {
+                        writer.writeString(login.name());
+                        writer.writeString(login.client());
+                    }
+                }
+                case CLIENT_MESSAGE -> {
+                    ClientMessage clientMessage = (ClientMessage) message.getMessage();
+                    writer.writeString(clientMessage.message());
+                    writer.writeUUID(clientMessage.usid());
+                    writer.writeString(clientMessage.room());
+                }
+                case SERVER_MESSAGE -> {
+                    writeServerMessage(writer, (ServerMessage) message.getMessage());
+                }
+                case SERVER_EMPTY_SUCCESS -> {  }
+                case SERVER_USER_LOGIN, SERVER_USER_LOGOUT -> {
+                    ServerUserName userName = (ServerUserName) message.getMessage();
+                    writer.writeString(userName.name());
+                }
+                case SERVER_LIST_ADDED, SERVER_LIST_REMOVED -> {
+                    ServerListDelta delta = (ServerListDelta) message.getMessage();
+                    writer.writeString(delta.user().name());
+                    writer.writeString(delta.user().client());
+                    writer.writeLong(delta.version());
+                }
+
+                case CLIENT_HISTORY_REQUEST -> {
+                    ClientHistoryRequest request = (ClientHistoryRequest) message.getMessage();
+                    writer.writeLong(request.before());
+                    writer.writeVarInt(request.limit());
+                    writer.writeUUID(request.usid());
+                    writer.writeString(request.room());
+                }
+                case SERVER_HISTORY_RESPONSE -> {
+                    ServerHistory history = (ServerHistory) message.getMessage();
+                    writer.writeVarInt(history.messages().size());
+                    for (ServerMessage serverMessage : history.messages()) {
+                        writeServerMessage(writer, serverMessage);
+                    }
+                }
+                case CLIENT_JOIN_ROOM, CLIENT_LEAVE_ROOM -> {
+                    ClientRoom room = (ClientRoom) message.getMessage();
+                    writer.writeString(room.room());
+                    writer.writeUUID(room.usid());
+                }
+                case SERVER_ROOM_JOINED, SERVER_ROOM_LEFT -> {
+                    ServerRoomEvent event = (ServerRoomEvent) message.getMessage();
+                    writer.writeString(event.room());
+                    writer.writeString(event.name());
+                }
+                case CLIENT_PRIVATE_MESSAGE -> {
+                    ClientPrivateMessage privateMessage = (ClientPrivateMessage) message.getMessage();
+                    writer.writeString(privateMessage.to());
+                    writer.writeString(privateMessage.message());
+                    writer.writeLong(privateMessage.id());
+                    writer.writeUUID(privateMessage.usid());
+                }
+                case SERVER_PRIVATE_MESSAGE -> {
+                    ServerPrivateMessage privateMessage = (ServerPrivateMessage) message.getMessage();
+                    writer.writeString(privateMessage.from());
+                    writer.writeString(privateMessage.message());
+                    writer.writeLong(privateMessage.id());
+                    writer.writeLong(privateMessage.timestamp());
+                }
+                case SERVER_PRIVATE_RECEIPT -> {
+                    ServerPrivateReceipt receipt = (ServerPrivateReceipt) message.getMessage();
+                    writer.writeString(receipt.to());
+                    writer.writeLong(receipt.id());
+                    writer.writeByte(receipt.status().ordinal());
+                }
+                case SERVER_RESYNC -> {
+                    ServerResync resync = (ServerResync) message.getMessage();
+                    writer.writeLong(resync.dropped());
+                }
+                case CLIENT_PING, CLIENT_PONG, SERVER_PING, SERVER_PONG -> {
+                    Heartbeat heartbeat = (Heartbeat) message.getMessage();
+                    writer.writeLong(heartbeat.nonce());
+                }
+
+                default -> throw new ParsingException("unrecognized message type");
+            }
+            writer.writeTo(out);
+        }
+        catch (ClassCastException | IOException e) {
+            throw new ParsingException(e);
+        }
+    }
+
+    private static ServerMessage readServerMessage(BinaryReader reader) throws IOException, ParsingException {
+        String text = reader.readString();
+        String name = reader.readString();
+        long id = reader.readLong();
+        return new ServerMessage(text, name, id, reader.readString());
+    }
+
+    private static void writeServerMessage(BinaryWriter writer, ServerMessage message) {
+        writer.writeString(message.message());
+        writer.writeString(message.name());
+        writer.writeLong(message.id());
+        writer.writeString(message.room());
+    }
+
+    private final int MaxFrameBytes;
+}
@@ -0,0 +1,81 @@
+package messages.parsing.binary;
+
+import messages.parsing.ParsingException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+class BinaryReader {
+    BinaryReader(InputStream in, int limit) {
+        In = in;
+        Remaining = limit;
+    }
+
+    int readByte() throws IOException, ParsingException {
+        if (Remaining <= 0) {
+            throw new ParsingException("unexpected end of message");
+        }
+        int value = In.read();
+        if (value == -1) {
+            throw new ParsingException("unexpected end of message");
+        }
+        --Remaining;
+        return value;
+    }
+
+    int readVarInt() throws IOException, ParsingException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new ParsingException("bad varint");
+    }
+
+    int readCount() throws IOException, ParsingException {
+        int count = readVarInt();
+        if (count < 0 || count > Remaining) {
+            throw new ParsingException("bad element count " + count);
+        }
+        return count;
+    }
+
+    String readString() throws IOException, ParsingException {
+        int length = readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0 || length - 1 > Remaining) {
+            throw new ParsingException("bad string length " + length);
+        }
+        byte[] bytes = In.readNBytes(length - 1);
+        if (bytes.length != length - 1) {
+            throw new ParsingException("unexpected end of message");
+        }
+        Remaining -= bytes.length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    UUID readUUID() throws IOException, ParsingException {
+        if (readByte() == 0) {
+            return null;
+        }
+        return new UUID(readLong(), readLong());
+    }
+
+    long readLong() throws IOException, ParsingException {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; ++i) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    private final InputStream In;
+    private int Remaining;
+}
@@ -0,0 +1,69 @@
+package messages.parsing.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+class BinaryWriter {
+    void writeByte(int value) {
+        ensure(1);
+        Bytes[Size++] = (byte) value;
+    }
+
+    void writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            Bytes[Size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        Bytes[Size++] = (byte) value;
+    }
+
+    void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, Bytes, Size, bytes.length);
+        Size += bytes.length;
+    }
+
+    void writeUUID(UUID value) {
+        if (value == null) {
+            writeByte(0);
+            return;
+        }
+        writeByte(1);
+        writeLong(value.getMostSignificantBits());
+        writeLong(value.getLeastSignificantBits());
+    }
+
+    void writeLong(long value) {
+        ensure(Long.BYTES);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            Bytes[Size++] = (byte) (value >>> shift);
+        }
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(Bytes, 0, Size);
+    }
+
+    void reset() {
+        Size = 0;
+    }
+
+    private void ensure(int count) {
+        if (Size + count > Bytes.length) {
+            Bytes = Arrays.copyOf(Bytes, Math.max(Bytes.length * 2, Size + count));
+        }
+    }
+
+    private byte[] Bytes = new byte[256];
+    private int Size = 0;
+}
@@ -0,0 +1,135 @@
+package messages.parsing.xml;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class XMLMessageHandler extends DefaultHandler {
+    void reset() {
+        Tag = null;
+        Name = "";
+        FirstChild = null;
+        ChildCount = 0;
+        Depth = 0;
+        Fields.clear();
+        EntryFields.clear();
+        Collection = null;
+        Entries = null;
+        ListVersion = "0";
+        Text.setLength(0);
+        IsCollecting = false;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        ++Depth;
+        if (IsCollecting) {
+            throw new SAXException("bad format");
+        }
+        if (Depth == 1) {
+            Tag = qName;
+            String name = attributes.getValue("name");
+            Name = name == null ? "" : name;
+        }
+        else if (Depth == 2) {
+            if (ChildCount++ == 0) {
+                FirstChild = qName;
+            }
+            if (qName.equals("listusers") || qName.equals("history")) {
+                Collection = qName;
+                Entries = new ArrayList<>();
+                String version = attributes.getValue("version");
+                ListVersion = version == null ? "0" : version;
+            }
+            else {
+                startText();
+            }
+        }
+        else if (Depth == 3 && Entries != null) {
+            if (!qName.equals(Collection.equals("history") ? "entry" : "user")) {
+                throw new SAXException("bad format");
+            }
+            EntryFields.clear();
+        }
+        else if (Depth == 4 && Entries != null) {
+            startText();
+        }
+        else {
+            throw new SAXException("bad format");
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (IsCollecting) {
+            IsCollecting = false;
+            (Depth == 2 ? Fields : EntryFields).putIfAbsent(qName, Text.toString());
+        }
+        else if (Depth == 3 && Entries != null) {
+            Entries.add(new HashMap<>(EntryFields));
+        }
+        --Depth;
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (IsCollecting) {
+            Text.append(ch, start, length);
+        }
+    }
+
+    private void startText() {
+        Text.setLength(0);
+        IsCollecting = true;
+    }
+
+    String getTag() {
+        return Tag;
+    }
+
+    String getName() {
+        return Name;
+    }
+
+    String getFirstChild() {
+        return FirstChild;
+    }
+
+    int getChildCount() {
+        return ChildCount;
+    }
+
+    Map<String, String> getFields() {
+        return Fields;
+    }
+
+    String getCollection() {
+        return Collection;
+    }
+
+    List<Map<String, String>> getEntries() {
+        return Entries;
+    }
+
+    String getListVersion() {
+        return ListVersion;
+    }
+
+    private String Tag;
+    private String Name;
+    private String FirstChild;
+    private int ChildCount;
+    private int Depth;
+    private boolean IsCollecting;
+    private String Collection;
+    private List<Map<String, String>> Entries;
+    private String ListVersion;
+    private final Map<String, String> Fields = new HashMap<>();
+    private final Map<String, String> EntryFields = new HashMap<>();
+    private final StringBuilder Text = new StringBuilder();
+}
@@ -1,14 +1,25 @@
 package messages.parsing.xml;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 public interface XMLParsable {
-    void parse(Document doc, Node main);
+    void parse(XMLStreamWriter writer) throws XMLStreamException;
 
-    static void addTextNode(String nodeName, String text, Node main, Document doc) {
-        Node node = doc.createElement(nodeName);
-        node.appendChild(doc.createTextNode(text));
-        main.appendChild(node);
+    static void addTextNode(String nodeName, String text, XMLStreamWriter writer) throws XMLStreamException {
+        if (text == null || text.isEmpty()) {
+            writer.writeEmptyElement(nodeName);
+            return;
+        }
+        writer.writeStartElement(nodeName);
+        int from = 0;
+        int cr;
+        while ((cr = text.indexOf('\r', from)) >= 0) {
+            writer.writeCharacters(text.substring(from, cr));
+            writer.writeEntityRef("#13");
+            from = cr + 1;
+        }
+        writer.writeCharacters(from == 0 ? text : text.substring(from));
+        writer.writeEndElement();
     }
 }
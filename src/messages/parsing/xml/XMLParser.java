@@ -3,223 +3,359 @@ package messages.parsing.xml;
 import messages.*;
 import messages.parsing.MessageReadWrite;
 import messages.parsing.ParsingException;
-import org.w3c.dom.*;
+
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.UUID;
 
 public class XMLParser implements MessageReadWrite {
-    private final static DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-    private final static TransformerFactory transformerFactory = TransformerFactory.newInstance();
+    private final static SAXParserFactory saxParserFactory = newSAXParserFactory();
+    private final static ThreadLocal<XMLReader> readers = ThreadLocal.withInitial(XMLParser::newReader);
+    private final static XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+    private final static byte[] DECLARATION =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>".getBytes(StandardCharsets.UTF_8);
 
     @Override
     public Message parse(InputStream in) throws ParsingException {
+        XMLReader reader = readers.get();
+        XMLMessageHandler handler = (XMLMessageHandler) reader.getContentHandler();
+        handler.reset();
         try {
-            Document doc =  documentBuilderFactory.newDocumentBuilder().parse(in);
-            Element main = doc.getDocumentElement();
-            String tag = main.getTagName();
-            String name = "";
-            name = main.getAttribute("name");
-            if (tag.equals("command")) {
-                switch (name) {
-                    case "login" -> {
-                        String value = getNodeValue("name", main);
-                        String type = getNodeValue("type", main);
-                        return new Message(
-                                MessageType.CLIENT_LOGIN,
-                                new ClientLogin(value, type)
-                        );
-                    }
-                    case "list" -> {
-                        String USID_string = getNodeValue("session", main);
-                        return new Message(
-                                MessageType.CLIENT_LIST_REQUEST,
-                                new ServerClientSessionID(UUID.fromString(USID_string))
-                        );
-                    }
-                    case "message" -> {
-                        String USID_string = getNodeValue("session", main);
-                        String message = getNodeValue("message", main);
-                        return new Message(
-                                MessageType.CLIENT_MESSAGE,
-                                new ClientMessage(message, UUID.fromString(USID_string))
-                        );
-                    }
-                    case "logout" -> {
-                        String USID_string = getNodeValue("session", main);
-                        return new Message(
-                                MessageType.CLIENT_LOGOUT,
-                                new ServerClientSessionID(UUID.fromString(USID_string))
-                        );
-                    }
-
-                    default -> {
-                        throw new ParsingException("bad format");
-                    }
+            reader.parse(new InputSource(in));
+        } catch (SAXException | IOException e) {
+            throw new ParsingException(e);
+        }
+        String tag = handler.getTag();
+        String name = handler.getName();
+        Map<String, String> fields = handler.getFields();
+        if (tag.equals("command")) {
+            switch (name) {
+                case "login" -> {
+                    String value = getNodeValue("name", fields);
+                    String type = getNodeValue("type", fields);
+                    return new Message(
+                            MessageType.CLIENT_LOGIN,
+                            new ClientLogin(value, type)
+                    );
+                }
+                case "list" -> {
+                    String USID_string = getNodeValue("session", fields);
+                    return new Message(
+                            MessageType.CLIENT_LIST_REQUEST,
+                            new ServerClientSessionID(parseUUID(USID_string))
+                    );
+                }
+                case "message" -> {
+                    String USID_string = getNodeValue("session", fields);
+                    String message = getNodeValue("message", fields);
+                    return new Message(
+                            MessageType.CLIENT_MESSAGE,
+                            new ClientMessage(message, parseUUID(USID_string), getOptionalValue("room", fields))
+                    );
+                }
+                case "logout" -> {
+                    String USID_string = getNodeValue("session", fields);
+                    return new Message(
+                            MessageType.CLIENT_LOGOUT,
+                            new ServerClientSessionID(parseUUID(USID_string))
+                    );
+                }
+                case "history" -> {
+                    String USID_string = getNodeValue("session", fields);
+                    return new Message(
+                            MessageType.CLIENT_HISTORY_REQUEST,
+                            new ClientHistoryRequest(
+                                    parseLong(getNodeValue("before", fields)),
+                                    (int) parseLong(getNodeValue("limit", fields)),
+                                    parseUUID(USID_string),
+                                    getOptionalValue("room", fields)
+                            )
+                    );
+                }
+                case "private" -> {
+                    String USID_string = getNodeValue("session", fields);
+                    return new Message(
+                            MessageType.CLIENT_PRIVATE_MESSAGE,
+                            new ClientPrivateMessage(
+                                    getNodeValue("to", fields),
+                                    getNodeValue("message", fields),
+                                    parseLong(getNodeValue("id", fields)),
+                                    parseUUID(USID_string)
+                            )
+                    );
+                }
+                case "ping", "pong" -> {
+                    return new Message(
+                            name.equals("ping") ? MessageType.CLIENT_PING : MessageType.CLIENT_PONG,
+                            new Heartbeat(parseLong(getNodeValue("nonce", fields)))
+                    );
+                }
+                case "join", "leave" -> {
+                    String USID_string = getNodeValue("session", fields);
+                    return new Message(
+                            name.equals("join") ? MessageType.CLIENT_JOIN_ROOM : MessageType.CLIENT_LEAVE_ROOM,
+                            new ClientRoom(getNodeValue("room", fields), parseUUID(USID_string))
+                    );
                 }
-            } else if (tag.equals("event")) {
-                switch (name) {
-                    case "message" -> {
-                        String message = getNodeValue("message", main);
-                        String name_from = getNodeValue("name", main);
-                        return new Message(
-                                MessageType.SERVER_MESSAGE,
-                                new ServerMessage(message, name_from)
-                        );
-                    }
-                    case "userlogin" -> {
-                        String name_from = getNodeValue("name", main);
-                        return new Message(
-                                MessageType.SERVER_USER_LOGIN,
-                                new ServerUserName(name_from)
-                        );
-                    }
-                    case "userlogout" -> {
-                        String name_from = getNodeValue("name", main);
-                        return new Message(
-                                MessageType.SERVER_USER_LOGOUT,
-                                new ServerUserName(name_from)
-                        );
-                    }
 
-                    default -> {
-                        throw new ParsingException("bad format");
-                    }
+                default -> {
+                    throw new ParsingException("bad format");
                 }
-            } else if (tag.equals("error")) {
-                String message = getNodeValue("message", main);
-                return new Message(
-                        MessageType.SERVER_ERROR,
-                        new ServerError(message)
-                );
-            } else if (tag.equals("success")) {
-                NodeList successNodes = main.getChildNodes();
-                if (successNodes.getLength() == 0) {
+            }
+        } else if (tag.equals("event")) {
+            switch (name) {
+                case "message" -> {
                     return new Message(
-                            MessageType.SERVER_EMPTY_SUCCESS,
-                            null
+                            MessageType.SERVER_MESSAGE,
+                            parseServerMessage(fields)
                     );
                 }
-                else {
-                    if (successNodes.getLength() != 1) {
-                        throw new ParsingException("bad format");
-                    }
-                    Node node = successNodes.item(0);
-                    if (node.getNodeName().equals("session")) {
-                        return new Message(
-                                MessageType.SERVER_LOGIN_SUCCESS,
-                                new ServerClientSessionID(UUID.fromString(getNodeValue("session", main)))
-                        );
-                    } else if (node.getNodeName().equals("listusers")) {
-                        ArrayList<ClientLogin> logins = new ArrayList<>();
-                        NodeList users = node.getChildNodes();
-                        for (int i = 0; i < users.getLength(); ++i) {
-                            if (!users.item(i).getNodeName().equals("user")) {
-                                throw new ParsingException("bad format");
-                            }
-                            String username = getNodeValue("name", users.item(i));
-                            String type = getNodeValue("type", users.item(i));
-                            logins.add(new ClientLogin(username, type));
-                        }
-                        return new Message(
-                                MessageType.SERVER_LIST_RESPONSE,
-                                new ServerList(logins)
-                        );
+                case "userlogin" -> {
+                    String name_from = getNodeValue("name", fields);
+                    return new Message(
+                            MessageType.SERVER_USER_LOGIN,
+                            new ServerUserName(name_from)
+                    );
+                }
+                case "userlogout" -> {
+                    String name_from = getNodeValue("name", fields);
+                    return new Message(
+                            MessageType.SERVER_USER_LOGOUT,
+                            new ServerUserName(name_from)
+                    );
+                }
+                case "listadded", "listremoved" -> {
+                    ClientLogin login = new ClientLogin(getNodeValue("name", fields), getNodeValue("type", fields));
+                    return new Message(
+                            name.equals("listadded") ? MessageType.SERVER_LIST_ADDED : MessageType.SERVER_LIST_REMOVED,
+                            new ServerListDelta(login, parseLong(getNodeValue("version", fields)))
+                    );
+                }
+                case "private" -> {
+                    return new Message(
+                            MessageType.SERVER_PRIVATE_MESSAGE,
+                            new ServerPrivateMessage(
+                                    getNodeValue("from", fields),
+                                    getNodeValue("message", fields),
+                                    parseLong(getNodeValue("id", fields)),
+                                    parseLong(getNodeValue("time", fields))
+                            )
+                    );
+                }
+                case "receipt" -> {
+                    ServerPrivateReceipt.Status status;
+                    try {
+                        status = ServerPrivateReceipt.Status.valueOf(getNodeValue("status", fields).toUpperCase());
                     }
-                    else {
+                    catch (IllegalArgumentException e) {
                         throw new ParsingException("bad format");
                     }
+                    return new Message(
+                            MessageType.SERVER_PRIVATE_RECEIPT,
+                            new ServerPrivateReceipt(getNodeValue("to", fields), parseLong(getNodeValue("id", fields)), status)
+                    );
+                }
+                case "ping", "pong" -> {
+                    return new Message(
+                            name.equals("ping") ? MessageType.SERVER_PING : MessageType.SERVER_PONG,
+                            new Heartbeat(parseLong(getNodeValue("nonce", fields)))
+                    );
+                }
+                case "resync" -> {
+                    return new Message(
+                            MessageType.SERVER_RESYNC,
+                            new ServerResync(parseLong(getNodeValue("dropped", fields)))
+                    );
+                }
+                case "roomjoined", "roomleft" -> {
+                    return new Message(
+                            name.equals("roomjoined") ? MessageType.SERVER_ROOM_JOINED : MessageType.SERVER_ROOM_LEFT,
+                            new ServerRoomEvent(getNodeValue("room", fields), getNodeValue("name", fields))
+                    );
                 }
-            }
 
-            return null;
-        } catch (SAXException | ParserConfigurationException | IOException e) {
-            throw new ParsingException(e);
+                default -> {
+                    throw new ParsingException("bad format");
+                }
+            }
+        } else if (tag.equals("error")) {
+            String message = getNodeValue("message", fields);
+            return new Message(
+                    MessageType.SERVER_ERROR,
+                    new ServerError(message)
+            );
+        } else if (tag.equals("success")) {
+            if (handler.getChildCount() == 0) {
+                return new Message(
+                        MessageType.SERVER_EMPTY_SUCCESS,
+                        null
+                );
+            }
+            if (handler.getChildCount() != 1) {
+                throw new ParsingException("bad format");
+            }
+            if (handler.getFirstChild().equals("session")) {
+                return new Message(
+                        MessageType.SERVER_LOGIN_SUCCESS,
+                        new ServerClientSessionID(parseUUID(getNodeValue("session", fields)))
+                );
+            } else if (handler.getFirstChild().equals("listusers")) {
+                ArrayList<ClientLogin> users = new ArrayList<>();
+                for (Map<String, String> entry : handler.getEntries()) {
+                    users.add(new ClientLogin(getNodeValue("name", entry), getNodeValue("type", entry)));
+                }
+                return new Message(
+                        MessageType.SERVER_LIST_RESPONSE,
+                        new ServerList(users, parseLong(handler.getListVersion()))
+                );
+            } else if (handler.getFirstChild().equals("history")) {
+                ArrayList<ServerMessage> messages = new ArrayList<>();
+                for (Map<String, String> entry : handler.getEntries()) {
+                    messages.add(parseServerMessage(entry));
+                }
+                return new Message(
+                        MessageType.SERVER_HISTORY_RESPONSE,
+                        new ServerHistory(messages)
+                );
+            }
+            else {
+                throw new ParsingException("bad format");
+            }
         }
 
+        throw new ParsingException("unrecognized root element " + tag);
     }
 
     @Override
     public void encode(OutputStream out, Message message) throws ParsingException {
         try {
-            Document doc = documentBuilderFactory.newDocumentBuilder().newDocument();
-            Element main;
+            out.write(DECLARATION);
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out, "UTF-8");
+            String main;
             switch (message.getType()) {
-                case CLIENT_LIST_REQUEST, CLIENT_LOGIN, CLIENT_LOGOUT, CLIENT_MESSAGE -> {
-                    main = doc.createElement("command");
-                    XMLParsable xmlParsable = (XMLParsable) message.getMessage();
-                    xmlParsable.parse(doc, main);
-                }
-                case SERVER_ERROR -> {
-                    main = doc.createElement("error");
-                    XMLParsable xmlParsable = (XMLParsable) message.getMessage();
-                    xmlParsable.parse(doc, main);
-                }
-                case SERVER_EMPTY_SUCCESS -> {
-                    main = doc.createElement("success");
-                }
-                case SERVER_LOGIN_SUCCESS, SERVER_LIST_RESPONSE -> {
-                    main = doc.createElement("success");
-                    XMLParsable xmlParsable = (XMLParsable) message.getMessage();
-                    xmlParsable.parse(doc, main);
-                }
-                case SERVER_MESSAGE, SERVER_USER_LOGIN, SERVER_USER_LOGOUT -> {
-                    main = doc.createElement("event");
-                    XMLParsable xmlParsable = (XMLParsable) message.getMessage();
-                    xmlParsable.parse(doc, main);
-                }
+                case CLIENT_LIST_REQUEST, CLIENT_LOGIN, CLIENT_LOGOUT, CLIENT_MESSAGE, CLIENT_HISTORY_REQUEST,
+                     CLIENT_JOIN_ROOM, CLIENT_LEAVE_ROOM, CLIENT_PRIVATE_MESSAGE, CLIENT_PING, CLIENT_PONG -> main = "command";
+                case SERVER_ERROR -> main = "error";
+                case SERVER_EMPTY_SUCCESS, SERVER_LOGIN_SUCCESS, SERVER_LIST_RESPONSE, SERVER_HISTORY_RESPONSE -> main = "success";
+                case SERVER_MESSAGE, SERVER_USER_LOGIN, SERVER_USER_LOGOUT, SERVER_LIST_ADDED, SERVER_LIST_REMOVED,
+                     SERVER_ROOM_JOINED, SERVER_ROOM_LEFT, SERVER_PRIVATE_MESSAGE, SERVER_PRIVATE_RECEIPT,
+                     SERVER_RESYNC, SERVER_PING, SERVER_PONG -> main = "event";
                 default -> {
                     throw new ParsingException("unrecognized message type");
                 }
             }
+            if (message.getType() == MessageType.SERVER_EMPTY_SUCCESS) {
+                writer.writeEmptyElement(main);
+            }
+            else {
+                writer.writeStartElement(main);
+            }
             switch (message.getType()) {
-                case CLIENT_LOGIN -> main.setAttribute("name", "login");
-                case CLIENT_MESSAGE, SERVER_MESSAGE -> main.setAttribute("name", "message");
-                case CLIENT_LOGOUT -> main.setAttribute("name", "logout");
-                case CLIENT_LIST_REQUEST -> main.setAttribute("name", "list");
-                case SERVER_USER_LOGIN -> main.setAttribute("name", "userlogin");
-                case SERVER_USER_LOGOUT -> main.setAttribute("name", "userlogout");
+                case CLIENT_LOGIN -> writer.writeAttribute("name", "login");
+                case CLIENT_MESSAGE, SERVER_MESSAGE -> writer.writeAttribute("name", "message");
+                case CLIENT_LOGOUT -> writer.writeAttribute("name", "logout");
+                case CLIENT_LIST_REQUEST -> writer.writeAttribute("name", "list");
+                case CLIENT_HISTORY_REQUEST -> writer.writeAttribute("name", "history");
+                case SERVER_USER_LOGIN -> writer.writeAttribute("name", "userlogin");
+                case SERVER_USER_LOGOUT -> writer.writeAttribute("name", "userlogout");
+                case SERVER_LIST_ADDED -> writer.writeAttribute("name", "listadded");
+                case SERVER_LIST_REMOVED -> writer.writeAttribute("name", "listremoved");
+                case CLIENT_JOIN_ROOM -> writer.writeAttribute("name", "join");
+                case CLIENT_LEAVE_ROOM -> writer.writeAttribute("name", "leave");
+                case SERVER_ROOM_JOINED -> writer.writeAttribute("name", "roomjoined");
+                case SERVER_ROOM_LEFT -> writer.writeAttribute("name", "roomleft");
+                case CLIENT_PRIVATE_MESSAGE, SERVER_PRIVATE_MESSAGE -> writer.writeAttribute("name", "private");
+                case SERVER_PRIVATE_RECEIPT -> writer.writeAttribute("name", "receipt");
+                case SERVER_RESYNC -> writer.writeAttribute("name", "resync");
+                case CLIENT_PING, SERVER_PING -> writer.writeAttribute("name", "ping");
+                case CLIENT_PONG, SERVER_PONG -> writer.writeAttribute("name", "pong");
             }
-            doc.appendChild(main);
+            if (message.getType() != MessageType.SERVER_EMPTY_SUCCESS) {
+                XMLParsable xmlParsable = (XMLParsable) message.getMessage();
+                xmlParsable.parse(writer);
+                writer.writeEndElement();
+            }
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+        } catch (ClassCastException | XMLStreamException | IOException e) {
+            throw new ParsingException(e);
+        }
+    }
 
-            Transformer transformer = transformerFactory.newTransformer();
-            DOMSource source = new DOMSource(doc);
-            StreamResult result = new StreamResult(out);
+    private String getNodeValue(String nodeName, Map<String, String> fields) throws ParsingException {
+        String value = fields.get(nodeName);
+        if (value == null || value.isEmpty()) {
+            throw new ParsingException("bad format");
+        }
+        return value;
+    }
 
-            transformer.transform(source, result);
-        } catch (ClassCastException | TransformerException | ParserConfigurationException e) {
-            throw new RuntimeException(e);
+    private ServerMessage parseServerMessage(Map<String, String> fields) throws ParsingException {
+        String id = fields.get("id");
+        return new ServerMessage(
+                getNodeValue("message", fields),
+                getNodeValue("name", fields),
+                id == null ? -1 : parseLong(id),
+                getOptionalValue("room", fields)
+        );
+    }
+
+    private String getOptionalValue(String nodeName, Map<String, String> fields) {
+        String value = fields.get(nodeName);
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private UUID parseUUID(String value) throws ParsingException {
+        try {
+            return UUID.fromString(value);
+        }
+        catch (IllegalArgumentException e) {
+            throw new ParsingException("bad format");
         }
     }
 
-    private String getNodeValue(String nodeName, Node element) throws ParsingException {
+    private long parseLong(String value) throws ParsingException {
         try {
-            Element e = (Element) element;
-            NodeList nodes = e.getElementsByTagName(nodeName);
-            if (nodes.getLength() == 0) {
-                throw new ParsingException("bad format");
-            }
-            NodeList childNodes = nodes.item(0).getChildNodes();
-            if (childNodes.getLength() != 1) {
-                throw new ParsingException("bad format");
-            }
-            return ((Text) childNodes.item(0)).getWholeText();
+            return Long.parseLong(value);
         }
-        catch (ClassCastException e) {
+        catch (NumberFormatException e) {
             throw new ParsingException("bad format");
         }
     }
+
+    private static XMLReader newReader() {
+        try {
+            XMLReader reader = saxParserFactory.newSAXParser().getXMLReader();
+            reader.setContentHandler(new XMLMessageHandler());
+            return reader;
+        }
+        catch (ParserConfigurationException | SAXException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static SAXParserFactory newSAXParserFactory() {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        try {
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        }
+        catch (ParserConfigurationException | SAXException e) {
+            throw new RuntimeException(e);
+        }
+        return factory;
+    }
 }
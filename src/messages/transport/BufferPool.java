@@ -0,0 +1,99 @@
+package messages.transport;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BufferPool {
+    public BufferPool(int minSize, int maxSize, int maxPooledPerClass) {
+        if (Integer.bitCount(minSize) != 1 || Integer.bitCount(maxSize) != 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("pool sizes must be powers of two, min <= max");
+        }
+        MinShift = Integer.numberOfTrailingZeros(minSize);
+        MaxPooledPerClass = maxPooledPerClass;
+        int classes = Integer.numberOfTrailingZeros(maxSize) - MinShift + 1;
+        Classes = newClasses(classes);
+        Pooled = new AtomicInteger[classes];
+        for (int i = 0; i < classes; ++i) {
+            Classes[i] = new ConcurrentLinkedQueue<>();
+            Pooled[i] = new AtomicInteger(0);
+        }
+    }
+
+    public PooledBuffer lease(int size) {
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+            buffer = Classes[sizeClass].poll();
+        }
+        if (buffer == null) {
+            Misses.increment();
+            buffer = ByteBuffer.allocateDirect(sizeClass >= 0 ? 1 << (sizeClass + MinShift) : size);
+        }
+        else {
+            Pooled[sizeClass].decrementAndGet();
+            Hits.increment();
+        }
+        Leased.increment();
+        buffer.clear().limit(size);
+        return new PooledBuffer(this, buffer, sizeClass);
+    }
+
+    void recycle(ByteBuffer buffer, int sizeClass) {
+        Leased.decrement();
+        if (sizeClass < 0) {
+            return;
+        }
+        if (Pooled[sizeClass].incrementAndGet() > MaxPooledPerClass) {
+            Pooled[sizeClass].decrementAndGet();
+            return;
+        }
+        Classes[sizeClass].offer(buffer);
+    }
+
+    public long getHits() {
+        return Hits.sum();
+    }
+
+    public long getMisses() {
+        return Misses.sum();
+    }
+
+    public long getLeased() {
+        return Leased.sum();
+    }
+
+    public int getPooled() {
+        int pooled = 0;
+        for (AtomicInteger count : Pooled) {
+            pooled += count.get();
+        }
+        return pooled;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + " misses=" + getMisses() + " leased=" + getLeased() + " pooled=" + getPooled();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<ByteBuffer>[] newClasses(int classes) {
+        return (Queue<ByteBuffer>[]) new Queue<?>[classes];
+    }
+
+    private int sizeClass(int size) {
+        int bits = size <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+        int sizeClass = Math.max(0, bits - MinShift);
+        return sizeClass < Classes.length ? sizeClass : -1;
+    }
+
+    private final int MinShift;
+    private final int MaxPooledPerClass;
+    private final Queue<ByteBuffer>[] Classes;
+    private final AtomicInteger[] Pooled;
+    private final LongAdder Hits = new LongAdder();
+    private final LongAdder Misses = new LongAdder();
+    private final LongAdder Leased = new LongAdder();
+}
@@ -0,0 +1,35 @@
+package messages.transport;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public class ByteBufferInputStream extends InputStream {
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        Buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return Buffer.hasRemaining() ? Buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!Buffer.hasRemaining()) {
+            return -1;
+        }
+        len = Math.min(len, Buffer.remaining());
+        Buffer.get(b, off, len);
+        return len;
+    }
+
+    @Override
+    public int available() {
+        return Buffer.remaining();
+    }
+
+    private final ByteBuffer Buffer;
+}
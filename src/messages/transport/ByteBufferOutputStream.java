@@ -0,0 +1,48 @@
+package messages.transport;
+
+import java.io.OutputStream;
+
+public class ByteBufferOutputStream extends OutputStream {
+    public ByteBufferOutputStream(BufferPool pool, int initialSize) {
+        Pool = pool;
+        Lease = pool.lease(initialSize);
+        Lease.buffer().clear();
+    }
+
+    @Override
+    public void write(int b) {
+        ensure(1);
+        Lease.buffer().put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensure(len);
+        Lease.buffer().put(b, off, len);
+    }
+
+    public void skip(int count) {
+        ensure(count);
+        Lease.buffer().position(Lease.buffer().position() + count);
+    }
+
+    public PooledBuffer toPooledBuffer() {
+        Lease.buffer().flip();
+        return Lease;
+    }
+
+    private void ensure(int count) {
+        if (Lease.buffer().remaining() >= count) {
+            return;
+        }
+        PooledBuffer grown = Pool.lease(Math.max(Lease.buffer().capacity() * 2, Lease.buffer().position() + count));
+        grown.buffer().clear();
+        Lease.buffer().flip();
+        grown.buffer().put(Lease.buffer());
+        Lease.release();
+        Lease = grown;
+    }
+
+    private final BufferPool Pool;
+    private PooledBuffer Lease;
+}
@@ -0,0 +1,90 @@
+package messages.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+public class FrameDecoder {
+    public FrameDecoder(BufferPool pool, int readSize, int maxFrameSize) {
+        Pool = pool;
+        ReadSize = readSize;
+        MaxFrameSize = maxFrameSize;
+    }
+
+    public int read(ReadableByteChannel channel, FrameHandler handler) throws IOException {
+        int total = 0;
+        for (int i = 0; i < MAX_READS_PER_CALL; ++i) {
+            if (Lease == null) {
+                Lease = Pool.lease(ReadSize);
+                Lease.buffer().clear();
+            }
+            ByteBuffer buffer = Lease.buffer();
+            int read = channel.read(buffer);
+            if (read == -1) {
+                close();
+                return -1;
+            }
+            total += read;
+            boolean filled = !buffer.hasRemaining();
+            if (!extract(handler) || !filled) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    public boolean resume(FrameHandler handler) throws IOException {
+        return Lease == null || extract(handler);
+    }
+
+    public void close() {
+        if (Lease != null) {
+            Lease.release();
+            Lease = null;
+        }
+    }
+
+    private boolean extract(FrameHandler handler) throws FrameTooLargeException {
+        ByteBuffer buffer = Lease.buffer();
+        buffer.flip();
+        int needed = 0;
+        boolean stopped = false;
+        while (buffer.remaining() >= Integer.BYTES) {
+            int position = buffer.position();
+            int size = buffer.getInt(position);
+            if (size < 0 || size > MaxFrameSize) {
+                throw new FrameTooLargeException(size, MaxFrameSize);
+            }
+            if (buffer.remaining() < Integer.BYTES + size) {
+                needed = Integer.BYTES + size;
+                break;
+            }
+            ByteBuffer frame = buffer.slice(position + Integer.BYTES, size);
+            buffer.position(position + Integer.BYTES + size);
+            if (!handler.onFrame(frame)) {
+                stopped = true;
+                break;
+            }
+        }
+        if (!buffer.hasRemaining()) {
+            close();
+        }
+        else if (needed > buffer.capacity()) {
+            PooledBuffer grown = Pool.lease(needed);
+            grown.buffer().clear();
+            grown.buffer().put(buffer);
+            Lease.release();
+            Lease = grown;
+        }
+        else {
+            buffer.compact();
+        }
+        return !stopped;
+    }
+
+    private static final int MAX_READS_PER_CALL = 16;
+    private final BufferPool Pool;
+    private final int ReadSize;
+    private final int MaxFrameSize;
+    private PooledBuffer Lease;
+}
@@ -0,0 +1,8 @@
+package messages.transport;
+
+import java.nio.ByteBuffer;
+
+@FunctionalInterface
+public interface FrameHandler {
+    boolean onFrame(ByteBuffer frame);
+}
@@ -0,0 +1,11 @@
+package messages.transport;
+
+import java.io.IOException;
+
+public class FrameTooLargeException extends IOException {
+    public FrameTooLargeException(int size, int maxSize) {
+        super("frame of " + size + " bytes exceeds limit of " + maxSize + " bytes");
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,43 @@
+package messages.transport;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class MpscQueue<T> {
+    public MpscQueue() {
+        Node<T> stub = new Node<>(null);
+        Head = stub;
+        Tail = new AtomicReference<>(stub);
+    }
+
+    public void offer(T value) {
+        Node<T> node = new Node<>(value);
+        Tail.getAndSet(node).Next = node;
+    }
+
+    public T poll() {
+        Node<T> next = Head.Next;
+        if (next == null) {
+            return null;
+        }
+        T value = next.Value;
+        next.Value = null;
+        Head = next;
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return Head.Next == null;
+    }
+
+    private static final class Node<T> {
+        Node(T value) {
+            Value = value;
+        }
+
+        T Value;
+        volatile Node<T> Next;
+    }
+
+    private Node<T> Head;
+    private final AtomicReference<Node<T>> Tail;
+}
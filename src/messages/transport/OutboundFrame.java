@@ -0,0 +1,28 @@
+package messages.transport;
+
+import java.nio.ByteBuffer;
+
+public record OutboundFrame(ByteBuffer buffer, PooledBuffer owner, int messages, boolean droppable) {
+    public OutboundFrame(ByteBuffer buffer, PooledBuffer owner, int messages) {
+        this(buffer, owner, messages, false);
+    }
+
+    public static OutboundFrame of(PooledBuffer frame) {
+        return new OutboundFrame(frame.buffer(), frame, 1);
+    }
+
+    public static OutboundFrame share(PooledBuffer frame) {
+        return share(frame, false);
+    }
+
+    public static OutboundFrame share(PooledBuffer frame, boolean droppable) {
+        frame.retain();
+        return new OutboundFrame(frame.buffer().duplicate(), frame, 1, droppable);
+    }
+
+    public void release() {
+        if (owner != null) {
+            owner.release();
+        }
+    }
+}
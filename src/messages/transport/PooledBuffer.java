@@ -0,0 +1,38 @@
+package messages.transport;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PooledBuffer {
+    PooledBuffer(BufferPool pool, ByteBuffer buffer, int sizeClass) {
+        Pool = pool;
+        Buffer = buffer;
+        SizeClass = sizeClass;
+    }
+
+    public ByteBuffer buffer() {
+        return Buffer;
+    }
+
+    public PooledBuffer retain() {
+        if (RefCount.getAndIncrement() <= 0) {
+            throw new IllegalStateException("buffer has already been released");
+        }
+        return this;
+    }
+
+    public void release() {
+        int count = RefCount.decrementAndGet();
+        if (count == 0) {
+            Pool.recycle(Buffer, SizeClass);
+        }
+        else if (count < 0) {
+            throw new IllegalStateException("buffer released more times than retained");
+        }
+    }
+
+    private final BufferPool Pool;
+    private final ByteBuffer Buffer;
+    private final int SizeClass;
+    private final AtomicInteger RefCount = new AtomicInteger(1);
+}
@@ -0,0 +1,37 @@
+package server;
+
+import java.nio.ByteBuffer;
+
+public class BacklogRing {
+    public BacklogRing(int capacity) {
+        Frames = new ByteBuffer[Math.max(capacity, 0)];
+    }
+
+    public synchronized void add(ByteBuffer frame) {
+        if (Frames.length == 0) {
+            return;
+        }
+        Frames[Head] = frame;
+        Head = (Head + 1) % Frames.length;
+        if (Count < Frames.length) {
+            ++Count;
+        }
+    }
+
+    public synchronized ByteBuffer[] snapshot() {
+        ByteBuffer[] frames = new ByteBuffer[Count];
+        int start = (Head - Count + Frames.length) % Math.max(Frames.length, 1);
+        for (int i = 0; i < Count; ++i) {
+            frames[i] = Frames[(start + i) % Frames.length];
+        }
+        return frames;
+    }
+
+    public int getCapacity() {
+        return Frames.length;
+    }
+
+    private final ByteBuffer[] Frames;
+    private int Head = 0;
+    private int Count = 0;
+}
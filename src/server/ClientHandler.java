@@ -1,161 +1,678 @@
 package server;
 
+import messages.Heartbeat;
 import messages.Message;
+import messages.MessageType;
+import messages.ServerResync;
 import messages.parsing.ParsingException;
+import messages.transport.FrameDecoder;
+import messages.transport.MpscQueue;
+import messages.transport.OutboundFrame;
+import messages.transport.PooledBuffer;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.UUID;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 public class ClientHandler implements Runnable {
     public ClientHandler(SocketChannel channel, Server server, UUID usid) {
+        this(channel, server, usid, ExecutionMode.THREAD);
+    }
+
+    public ClientHandler(SocketChannel channel, Server server, UUID usid, ExecutionMode mode) {
         SockChannel = channel;
         ControlServer = server;
         USID = usid;
+        Mode = mode;
+        Idle = server.IDLE_WHEEL;
+        LastActivity = Idle == null ? 0 : Idle.now();
+        Decoder = new FrameDecoder(
+                server.POOL,
+                mode == ExecutionMode.VIRTUAL ? Server.BLOCKING_READ_SIZE : Server.READ_BUFFER_SIZE,
+                server.MAX_FRAME_BYTES
+        );
     }
 
     @Override
     public void run() {
+        if (Mode == ExecutionMode.VIRTUAL) {
+            runBlocking();
+            return;
+        }
         try (Selector selector = Selector.open()) {
-            synchronized (this) {
-                ListeneingSelector = selector;
-                this.notify();
-            }
-            SockChannel.configureBlocking(false);
-            SelectionKey socketKey = SockChannel.register(selector, SelectionKey.OP_READ);
-            ByteBuffer sizeBuffer = ByteBuffer.allocate(4);
-            ByteBuffer messageBuffer = null;
-            boolean isReadingObject = false;
-
+            register(selector);
             while (!Thread.interrupted() && ControlServer.isRunning() && isAlive()) {
                 selector.select();
                 var iter = selector.selectedKeys().iterator();
                 while (iter.hasNext()) {
                     SelectionKey key = iter.next();
                     iter.remove();
-                    if (key.isReadable()) {
-                        int readCode = 0;
-                        if (isReadingObject) {
-                            readCode = SockChannel.read(messageBuffer);
-                            if (!messageBuffer.hasRemaining()) {
-                                messageBuffer.position(0);
-                                isReadingObject = false;
-                                addInputMessage(messageBuffer);
-                                messageBuffer.clear();
-                                messageBuffer = null;
-                            }
-                        } else {
-                            readCode = SockChannel.read(sizeBuffer);
-                            if (!sizeBuffer.hasRemaining()) {
-                                sizeBuffer.position(0);
-                                isReadingObject = true;
-                                messageBuffer = ByteBuffer.allocate(sizeBuffer.getInt());
-                                sizeBuffer.clear();
-                            }
-                        }
-                        if (readCode == -1) {
-                            IsAlive.set(false);
-                            break;
-                        }
-                    }
-                    synchronized (outputQueue) {
-                        if (!outputQueue.isEmpty() && key.isWritable()) {
-                                ByteBuffer buffer = outputQueue.element();
-                                SockChannel.write(buffer);
-                                if (!buffer.hasRemaining()) {
-                                    outputQueue.poll();
-                                    if (outputQueue.isEmpty())
-                                        socketKey.interestOpsAnd(~SelectionKey.OP_WRITE);
-                                }
-                        }
-                    }
-                    Message message;
-                    synchronized (inputQueue) {
-                        message = inputQueue.poll();
-                    }
-                    if (message != null) {
-                        ControlServer.handleMessage(message, USID);
+                    if (!handleKey(key)) {
+                        break;
                     }
                 }
-                synchronized (outputQueue) {
-                    if (!outputQueue.isEmpty()) {
-                        socketKey.interestOpsOr(SelectionKey.OP_WRITE);
-                    }
+                updateInterest();
+            }
+        }
+        catch (IOException e) {
+            ControlServer.LOG.info(USID, "connection has been corrupted, error: {}", e.getMessage());
+            ControlServer.LOG.info(USID, "cancelling corrupted connection");
+        }
+        finally {
+            close();
+        }
+    }
+
+    private void runBlocking() {
+        try {
+            SockChannel.configureBlocking(true);
+            ControlServer.execute(this::writeBlocking);
+            while (!Thread.interrupted() && ControlServer.isRunning() && isAlive()) {
+                if (Stalled != null) {
+                    ReadSignal.acquire();
+                    resumeReading();
+                }
+                else if (Decoder.read(SockChannel, this::onFrame) == -1) {
+                    IsAlive.set(false);
+                    break;
                 }
             }
         }
         catch (IOException e) {
-            Server.LOGGER.info("USID: " + USID + "; connection has been corrupted, error: " + e.getMessage());
-            Server.LOGGER.info("USID: " + USID + "; cancelling corrupted connection");
+            ControlServer.LOG.info(USID, "connection has been corrupted, error: {}", e.getMessage());
+            ControlServer.LOG.info(USID, "cancelling corrupted connection");
+        }
+        catch (InterruptedException e) {
+            ControlServer.LOG.info(USID, "reader interrupted");
+        }
+        finally {
+            close();
+            WriteSignal.release();
+        }
+    }
+
+    private void writeBlocking() {
+        try {
+            while (isAlive()) {
+                WriteSignal.acquire();
+                WriteSignal.drainPermits();
+                while (flush()) {  }
+            }
+        }
+        catch (IOException e) {
+            ControlServer.LOG.info(USID, "cannot write to connection, error: {}", e.getMessage());
+        }
+        catch (InterruptedException e) {
+            ControlServer.LOG.info(USID, "writer interrupted");
         }
         finally {
-            ControlServer.removeSession(USID);
+            IsAlive.set(false);
+            releaseBuffers();
+            try {
+                SockChannel.close();
+            } catch (IOException e) {
+                ControlServer.LOG.info(USID, "ignored exception on closing SocketChannel");
+            }
+        }
+    }
+
+    void bind(EventLoop loop) {
+        synchronized (this) {
+            Loop = loop;
+            ListeneingSelector = loop.getSelector();
+            this.notifyAll();
+        }
+    }
+
+    void register(Selector selector) throws IOException {
+        SockChannel.configureBlocking(false);
+        SocketKey = SockChannel.register(selector, SelectionKey.OP_READ, this);
+        synchronized (this) {
+            ListeneingSelector = selector;
+            this.notifyAll();
+        }
+        updateInterest();
+    }
+
+    boolean handleKey(SelectionKey key) throws IOException {
+        if (key.isReadable() && Decoder.read(SockChannel, this::onFrame) == -1) {
+            IsAlive.set(false);
+            return false;
+        }
+        if (key.isValid() && key.isWritable() && !flush()) {
+            SocketKey.interestOpsAnd(~SelectionKey.OP_WRITE);
+        }
+        return isAlive();
+    }
+
+    boolean updateInterest() {
+        collectOutput();
+        if (ResumePending) {
+            ResumePending = false;
+            resumeReading();
+        }
+        if (SocketKey != null && SocketKey.isValid() && !pendingWrites.isEmpty()) {
+            SocketKey.interestOpsOr(SelectionKey.OP_WRITE);
+        }
+        return isAlive();
+    }
+
+    private void stall(Message message) {
+        Stalled = message;
+        if (SocketKey != null && SocketKey.isValid()) {
+            SocketKey.interestOpsAnd(~SelectionKey.OP_READ);
+        }
+        ControlServer.DISPATCHER.awaitRoom(USID, this::wakeReader);
+    }
+
+    private void wakeReader() {
+        ResumePending = true;
+        if (Mode == ExecutionMode.VIRTUAL) {
+            ReadSignal.release();
+        }
+        else {
+            signal();
+        }
+    }
+
+    private void resumeReading() {
+        Message message = Stalled;
+        if (message == null || !isAlive()) {
+            return;
+        }
+        if (!ControlServer.dispatch(message, USID)) {
+            stall(message);
+            return;
+        }
+        Stalled = null;
+        try {
+            if (Decoder.resume(this::onFrame) && Stalled == null && SocketKey != null && SocketKey.isValid()) {
+                SocketKey.interestOpsOr(SelectionKey.OP_READ);
+            }
+        }
+        catch (IOException e) {
+            ControlServer.LOG.info(USID, "connection has been corrupted, error: {}", e.getMessage());
+            IsAlive.set(false);
+        }
+    }
+
+    private void collectOutput() {
+        WakeupPending.set(false);
+        OutboundFrame frame;
+        while ((frame = outputQueue.poll()) != null) {
+            if (IsSlow.get() && frame.droppable() && slowPolicy() == SlowConsumerPolicy.RESYNC) {
+                drop(frame);
+            }
+            else {
+                pendingWrites.offer(frame);
+            }
+        }
+        if (QueuedBytes.get() > ControlServer.OUTPUT_HIGH_WATERMARK) {
+            shed();
+        }
+    }
+
+    private void shed() {
+        markSlow();
+        SlowConsumerPolicy policy = slowPolicy();
+        if (policy != SlowConsumerPolicy.DISCONNECT) {
+            long target = policy == SlowConsumerPolicy.DROP_OLDEST ? ControlServer.OUTPUT_LOW_WATERMARK : 0;
+            var iter = pendingWrites.iterator();
+            if (iter.hasNext()) {
+                iter.next();
+            }
+            while (iter.hasNext() && QueuedBytes.get() > target) {
+                OutboundFrame frame = iter.next();
+                if (frame.droppable()) {
+                    iter.remove();
+                    drop(frame);
+                }
+            }
+            if (QueuedBytes.get() <= ControlServer.OUTPUT_HIGH_WATERMARK) {
+                return;
+            }
+        }
+        evict();
+    }
+
+    private void markSlow() {
+        if (IsSlow.compareAndSet(false, true)) {
+            ControlServer.STATS.recordSlowConsumer();
+            if (ControlServer.LOG.isEnabled(Level.INFO, USID)) {
+                ControlServer.LOG.info(USID, "slow consumer with {} bytes queued, policy {}", QueuedBytes.get(), slowPolicy());
+            }
+        }
+    }
+
+    private void evict() {
+        if (!IsAlive.compareAndSet(true, false)) {
+            return;
+        }
+        if (ControlServer.LOG.isEnabled(Level.INFO, USID)) {
+            ControlServer.LOG.info(USID, "evicting slow consumer with {} bytes queued", QueuedBytes.get());
+        }
+        ControlServer.STATS.recordEviction();
+    }
+
+    private void drop(OutboundFrame frame) {
+        QueuedBytes.addAndGet(-frame.buffer().remaining());
+        discard(frame);
+    }
+
+    private void discard(OutboundFrame frame) {
+        DroppedMessages.addAndGet(frame.messages());
+        UnsyncedMessages.addAndGet(frame.messages());
+        ControlServer.STATS.recordDrop(frame.buffer().remaining(), frame.messages());
+        frame.release();
+    }
+
+    private boolean admit(OutboundFrame frame) {
+        int size = frame.buffer().remaining();
+        long limit = ControlServer.OUTPUT_HIGH_WATERMARK * 2;
+        long queued;
+        while ((queued = QueuedBytes.get()) + size <= limit) {
+            if (QueuedBytes.compareAndSet(queued, queued + size)) {
+                return true;
+            }
+        }
+        markSlow();
+        if (frame.droppable() && slowPolicy() != SlowConsumerPolicy.DISCONNECT) {
+            discard(frame);
+            return false;
+        }
+        frame.release();
+        evict();
+        if (Mode == ExecutionMode.VIRTUAL) {
             try {
                 SockChannel.close();
             } catch (IOException e) {
-                Server.LOGGER.info("USID: " + USID + "; ignored exception on closing SocketChannel");
+                ControlServer.LOG.info(USID, "ignored exception on closing SocketChannel");
+            }
+        }
+        return false;
+    }
+
+    private void recover() {
+        IsSlow.set(false);
+        long unsynced = UnsyncedMessages.getAndSet(0);
+        if (ControlServer.LOG.isEnabled(Level.INFO, USID)) {
+            ControlServer.LOG.info(USID, "slow consumer caught up, {} messages dropped", unsynced);
+        }
+        if (slowPolicy() == SlowConsumerPolicy.RESYNC && unsynced > 0) {
+            PooledBuffer marker;
+            try {
+                marker = ControlServer.PARSER.encodeFrame(
+                        new Message(MessageType.SERVER_RESYNC, new ServerResync(unsynced)),
+                        ControlServer.POOL
+                );
+            } catch (ParsingException e) {
+                ControlServer.LOG.info(USID, "parser exception: {}", e.getMessage());
+                IsAlive.set(false);
+                return;
             }
+            QueuedBytes.addAndGet(marker.buffer().remaining());
+            pendingWrites.offer(OutboundFrame.of(marker));
+            ControlServer.STATS.recordResync();
         }
     }
 
+    boolean flush() throws IOException {
+        collectOutput();
+        if (!isAlive()) {
+            return false;
+        }
+        if (ControlServer.COALESCE_BYTES > 0) {
+            coalesce();
+        }
+        int count = 0;
+        long bytes = 0;
+        for (OutboundFrame frame : pendingWrites) {
+            if (count == WriteBatch.length || bytes >= ControlServer.FLUSH_BYTES) {
+                break;
+            }
+            WriteBatch[count++] = frame.buffer();
+            bytes += frame.buffer().remaining();
+        }
+        if (count == 0) {
+            return false;
+        }
+        long written = SockChannel.write(WriteBatch, 0, count);
+        int delivered = 0;
+        for (int i = 0; i < count && !WriteBatch[i].hasRemaining(); ++i) {
+            OutboundFrame frame = pendingWrites.poll();
+            delivered += frame.messages();
+            frame.release();
+        }
+        Arrays.fill(WriteBatch, 0, count, null);
+        ControlServer.STATS.recordWrite(written, delivered);
+        if (QueuedBytes.addAndGet(-written) <= ControlServer.OUTPUT_LOW_WATERMARK && written > 0 && IsSlow.get()) {
+            recover();
+        }
+        return !pendingWrites.isEmpty();
+    }
+
+    private void coalesce() {
+        OutboundFrame first = pendingWrites.peek();
+        if (first == null || first.buffer().remaining() >= ControlServer.COALESCE_BYTES) {
+            return;
+        }
+        int frames = 0;
+        int bytes = 0;
+        for (OutboundFrame frame : pendingWrites) {
+            int size = frame.buffer().remaining();
+            if (size >= ControlServer.COALESCE_BYTES || bytes + size > ControlServer.FLUSH_BYTES) {
+                break;
+            }
+            ++frames;
+            bytes += size;
+        }
+        if (frames < 2) {
+            return;
+        }
+        PooledBuffer merged = ControlServer.POOL.lease(bytes);
+        int messages = 0;
+        for (int i = 0; i < frames; ++i) {
+            OutboundFrame frame = pendingWrites.poll();
+            merged.buffer().put(frame.buffer());
+            messages += frame.messages();
+            frame.release();
+        }
+        merged.buffer().flip();
+        pendingWrites.addFirst(new OutboundFrame(merged.buffer(), merged, messages));
+    }
+
+    void close() {
+        IsAlive.set(false);
+        if (SocketKey != null) {
+            SocketKey.cancel();
+        }
+        if (Mode != ExecutionMode.VIRTUAL) {
+            releaseBuffers();
+        }
+        Decoder.close();
+        ControlServer.dispatchClose(USID);
+        try {
+            SockChannel.close();
+        } catch (IOException e) {
+            ControlServer.LOG.info(USID, "ignored exception on closing SocketChannel");
+        }
+    }
+
+    UUID getUSID() {
+        return USID;
+    }
+
+    boolean isOpen() {
+        return isAlive();
+    }
+
+    long getLastActivity() {
+        return LastActivity;
+    }
+
+    boolean acceptsPings() {
+        return AcceptsPings;
+    }
+
+    boolean isIdleExempt() {
+        return IdleExempt;
+    }
+
+    void setResync(boolean supported) {
+        AcceptsResync = supported;
+    }
+
+    private SlowConsumerPolicy slowPolicy() {
+        if (ControlServer.SLOW_POLICY == SlowConsumerPolicy.RESYNC && !AcceptsResync) {
+            return SlowConsumerPolicy.DROP_OLDEST;
+        }
+        return ControlServer.SLOW_POLICY;
+    }
+
+    void setHeartbeat(boolean supported) {
+        if (supported) {
+            AcceptsPings = true;
+            return;
+        }
+        IdleExempt = true;
+        if (SockChannel != null) {
+            try {
+                SockChannel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            } catch (IOException e) {
+                ControlServer.LOG.info(USID, "cannot enable keepalive: {}", e.getMessage());
+            }
+        }
+    }
+
+    void touch() {
+        if (Idle != null) {
+            long now = Idle.now();
+            if (LastActivity != now) {
+                LastActivity = now;
+            }
+        }
+    }
+
+    void ping(long nonce) {
+        addOutputMessage(new Message(MessageType.SERVER_PING, new Heartbeat(nonce)));
+    }
+
+    void reap(long idleMillis) {
+        if (!IsAlive.compareAndSet(true, false)) {
+            return;
+        }
+        if (ControlServer.LOG.isEnabled(Level.INFO, USID)) {
+            ControlServer.LOG.info(USID, "idle for {} ms, closing connection", idleMillis);
+        }
+        signal();
+    }
+
     public void addOutputMessage(Message message) {
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        PooledBuffer frame;
         try {
-            ControlServer.PARSER.encode(stream, message);
+            frame = ControlServer.PARSER.encodeFrame(message, ControlServer.POOL);
         } catch (ParsingException e) {
-            Server.LOGGER.info("Parser exception: " + e.getMessage());
+            ControlServer.LOG.info(USID, "parser exception: {}", e.getMessage());
             IsAlive.set(false);
             return;
         }
-        byte[] bytes = stream.toByteArray();
-        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + Integer.BYTES);
-        buffer.putInt(bytes.length);
-        buffer.put(bytes);
-        buffer.position(0);
-        synchronized (outputQueue) {
-            outputQueue.offer(buffer);
+        enqueue(OutboundFrame.of(frame));
+        ControlServer.METRICS.recordOut(message.getType(), 1);
+    }
+
+    public void addOutputFrame(PooledBuffer frame) {
+        addOutputFrame(frame, false);
+    }
+
+    public void addOutputFrame(PooledBuffer frame, boolean droppable) {
+        enqueue(OutboundFrame.share(frame, droppable));
+    }
+
+    public void addOutputFrame(ByteBuffer frame) {
+        enqueue(new OutboundFrame(frame.duplicate(), null, 1));
+    }
+
+    public void addOutputFrames(ByteBuffer[] frames) {
+        addOutputFrames(frames, false);
+    }
+
+    public void addOutputFrames(ByteBuffer[] frames, boolean droppable) {
+        if (frames.length == 0) {
+            return;
         }
-        synchronized (this) {
-            while (ListeneingSelector == null) {
-                try {
-                    this.wait();
-                } catch (InterruptedException e) {
-                    IsAlive.set(false);
+        for (ByteBuffer frame : frames) {
+            OutboundFrame outbound = new OutboundFrame(frame.duplicate(), null, 1, droppable);
+            if (admit(outbound)) {
+                outputQueue.offer(outbound);
+            }
+        }
+        signal();
+    }
+
+    public boolean isSlow() {
+        return IsSlow.get();
+    }
+
+    public long getQueuedBytes() {
+        return QueuedBytes.get();
+    }
+
+    public long getDroppedMessages() {
+        return DroppedMessages.get();
+    }
+
+    private void enqueue(OutboundFrame frame) {
+        if (admit(frame)) {
+            outputQueue.offer(frame);
+        }
+        signal();
+    }
+
+    private void signal() {
+        if (IsClosed) {
+            drainClosed();
+            return;
+        }
+        if (WakeupPending.get() || !WakeupPending.compareAndSet(false, true)) {
+            return;
+        }
+        if (Mode == ExecutionMode.VIRTUAL) {
+            WriteSignal.release();
+            return;
+        }
+        if (ListeneingSelector == null) {
+            synchronized (this) {
+                while (ListeneingSelector == null) {
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        IsAlive.set(false);
+                        return;
+                    }
                 }
             }
+        }
+        if (Loop != null) {
+            Loop.requestWrite(this);
+        }
+        else {
             ListeneingSelector.wakeup();
         }
     }
 
-    private void addInputMessage(ByteBuffer message) {
-        try {
-            synchronized (inputQueue) {
-                inputQueue.offer(ControlServer.PARSER.parse(new ByteArrayInputStream(message.array())));
+    private void releaseBuffers() {
+        OutboundFrame frame;
+        while ((frame = pendingWrites.poll()) != null) {
+            frame.release();
+        }
+        IsClosed = true;
+        drainClosed();
+    }
+
+    int discardOutput() {
+        WakeupPending.set(false);
+        WriteSignal.drainPermits();
+        int discarded = 0;
+        OutboundFrame frame;
+        while ((frame = outputQueue.poll()) != null || (frame = pendingWrites.poll()) != null) {
+            QueuedBytes.addAndGet(-frame.buffer().remaining());
+            frame.release();
+            ++discarded;
+        }
+        return discarded;
+    }
+
+    private void drainClosed() {
+        while (!outputQueue.isEmpty() && DrainLock.compareAndSet(false, true)) {
+            try {
+                OutboundFrame frame;
+                while ((frame = outputQueue.poll()) != null) {
+                    frame.release();
+                }
             }
+            finally {
+                DrainLock.set(false);
+            }
+        }
+    }
+
+    private boolean onFrame(ByteBuffer frame) {
+        touch();
+        Message message;
+        try {
+            message = ControlServer.PARSER.parse(frame);
         } catch (ParsingException e) {
-            Server.LOGGER.info("Parser exception: " + e.getMessage());
+            ControlServer.LOG.info(USID, "parser exception: {}", e.getMessage());
+            IsAlive.set(false);
+            return false;
+        }
+        catch (RuntimeException e) {
+            ControlServer.LOG.warning(USID, "parser failure: {}", e);
+            IsAlive.set(false);
+            return false;
+        }
+        if (message == null || !message.getType().isFromClient()) {
+            ControlServer.LOG.info(USID, "unexpected message {} from client", message == null ? null : message.getType());
+            IsAlive.set(false);
+            return false;
+        }
+        try {
+            ControlServer.METRICS.recordIn(message.getType(), Integer.BYTES + frame.limit());
+            if (!ControlServer.dispatch(message, USID)) {
+                stall(message);
+                return false;
+            }
+        }
+        catch (RuntimeException e) {
+            ControlServer.LOG.log(Level.WARNING, USID, "cannot handle {}: {}", message.getType(), e, null);
             IsAlive.set(false);
+            return false;
         }
+        return isAlive();
     }
 
     private boolean isAlive() {
         return IsAlive.get();
     }
 
-    private Selector ListeneingSelector;
+    private volatile Selector ListeneingSelector;
+    private volatile EventLoop Loop;
+    private SelectionKey SocketKey;
     private final AtomicBoolean IsAlive = new AtomicBoolean(true);
     private final SocketChannel SockChannel;
     private final Server ControlServer;
     private final UUID USID;
-    private final Queue<ByteBuffer> outputQueue = new LinkedList<>();
-    private final Queue<Message> inputQueue = new LinkedList<>();
-}
\ No newline at end of file
+    private final ExecutionMode Mode;
+    private final FrameDecoder Decoder;
+    private final IdleWheel Idle;
+    private volatile long LastActivity;
+    private volatile boolean AcceptsPings = false;
+    private volatile boolean IdleExempt = false;
+    private volatile boolean AcceptsResync = false;
+    private final Semaphore WriteSignal = new Semaphore(0);
+    private final Semaphore ReadSignal = new Semaphore(0);
+    private volatile Message Stalled;
+    private volatile boolean ResumePending = false;
+    private final MpscQueue<OutboundFrame> outputQueue = new MpscQueue<>();
+    private final Deque<OutboundFrame> pendingWrites = new ArrayDeque<>();
+    private final AtomicBoolean WakeupPending = new AtomicBoolean(false);
+    private final AtomicBoolean DrainLock = new AtomicBoolean(false);
+    private final ByteBuffer[] WriteBatch = new ByteBuffer[MAX_GATHER];
+    private volatile boolean IsClosed = false;
+    private final AtomicLong QueuedBytes = new AtomicLong(0);
+    private final AtomicBoolean IsSlow = new AtomicBoolean(false);
+    private final AtomicLong DroppedMessages = new AtomicLong(0);
+    private final AtomicLong UnsyncedMessages = new AtomicLong(0);
+    private static final int MAX_GATHER = 64;
+}
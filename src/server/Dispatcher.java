@@ -0,0 +1,182 @@
+package server;
+
+import messages.Message;
+import server.metrics.Histogram;
+
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Dispatcher {
+    public Dispatcher(Server server, int threads, int capacity) {
+        ControlServer = server;
+        CAPACITY = capacity;
+        RESUME_DEPTH = capacity / 2;
+        Shards = new Shard[threads];
+        Workers = new Thread[threads];
+        for (int i = 0; i < threads; ++i) {
+            Shards[i] = new Shard();
+        }
+    }
+
+    public void start() {
+        Server.LOGGER.info("starting " + Workers.length + " dispatch workers");
+        for (int i = 0; i < Workers.length; ++i) {
+            Shard shard = Shards[i];
+            Workers[i] = new Thread(() -> work(shard), "dispatch-" + i);
+            Workers[i].setDaemon(true);
+            Workers[i].start();
+        }
+    }
+
+    public boolean submit(Message message, UUID usid) {
+        Shard shard = shardOf(usid);
+        if (shard.Messages.incrementAndGet() > CAPACITY) {
+            shard.Messages.decrementAndGet();
+            Stalls.increment();
+            return false;
+        }
+        enqueue(shard, new Dispatch(usid, message, null, System.nanoTime()));
+        return true;
+    }
+
+    public boolean submitClose(UUID usid) {
+        if (IsClosed) {
+            return false;
+        }
+        enqueue(shardOf(usid), new Dispatch(usid, null, null, System.nanoTime()));
+        return true;
+    }
+
+    public boolean submitAction(UUID usid, Runnable action) {
+        if (IsClosed) {
+            return false;
+        }
+        enqueue(shardOf(usid), new Dispatch(usid, null, action, System.nanoTime()));
+        return true;
+    }
+
+    public void awaitRoom(UUID usid, Runnable resume) {
+        Shard shard = shardOf(usid);
+        shard.Waiters.offer(resume);
+        if (shard.Messages.get() <= RESUME_DEPTH && shard.Waiters.remove(resume)) {
+            resume.run();
+        }
+    }
+
+    public int[] getQueueDepths() {
+        int[] depths = new int[Shards.length];
+        for (int i = 0; i < Shards.length; ++i) {
+            depths[i] = Shards[i].Tasks.size();
+        }
+        return depths;
+    }
+
+    public Histogram getQueueDepth() {
+        return QueueDepth;
+    }
+
+    public Histogram getQueueLatency() {
+        return QueueLatency;
+    }
+
+    public Histogram getHandleLatency() {
+        return HandleLatency;
+    }
+
+    public long getStalls() {
+        return Stalls.sum();
+    }
+
+    public void close() {
+        IsClosed = true;
+        for (Thread worker : Workers) {
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "shards=" + Shards.length + " stalls=" + getStalls()
+                + " depth[" + QueueDepth + "] queuedUs[" + QueueLatency + "] handledUs[" + HandleLatency + "]";
+    }
+
+    private Shard shardOf(UUID usid) {
+        return Shards[(usid.hashCode() & 0x7FFFFFFF) % Shards.length];
+    }
+
+    private void enqueue(Shard shard, Dispatch task) {
+        shard.Tasks.offer(task);
+        QueueDepth.record(shard.Tasks.size());
+    }
+
+    private void work(Shard shard) {
+        while (!Thread.currentThread().isInterrupted()) {
+            Dispatch task;
+            try {
+                task = shard.Tasks.take();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            if (task.message() != null && shard.Messages.decrementAndGet() <= RESUME_DEPTH) {
+                resumeWaiters(shard);
+            }
+            long started = System.nanoTime();
+            QueueLatency.record((started - task.enqueued()) / 1000);
+            try {
+                if (task.action() != null) {
+                    task.action().run();
+                }
+                else if (task.message() == null) {
+                    ControlServer.removeSession(task.usid());
+                }
+                else {
+                    ControlServer.handleMessage(task.message(), task.usid());
+                }
+            }
+            catch (RuntimeException e) {
+                ControlServer.LOG.warning(task.usid(), "dispatch exception {}", e);
+            }
+            HandleLatency.record((System.nanoTime() - started) / 1000);
+        }
+    }
+
+    private void resumeWaiters(Shard shard) {
+        Runnable resume;
+        while ((resume = shard.Waiters.poll()) != null) {
+            try {
+                resume.run();
+            }
+            catch (RuntimeException e) {
+                Server.LOGGER.warning("dispatch resume exception " + e);
+            }
+        }
+    }
+
+    private record Dispatch(UUID usid, Message message, Runnable action, long enqueued) {
+    }
+
+    private static final class Shard {
+        final BlockingQueue<Dispatch> Tasks = new LinkedBlockingQueue<>();
+        final AtomicInteger Messages = new AtomicInteger(0);
+        final Queue<Runnable> Waiters = new ConcurrentLinkedQueue<>();
+    }
+
+    private final Server ControlServer;
+    private final int CAPACITY;
+    private final int RESUME_DEPTH;
+    private final Shard[] Shards;
+    private final Thread[] Workers;
+    private final Histogram QueueDepth = new Histogram();
+    private final Histogram QueueLatency = new Histogram();
+    private final Histogram HandleLatency = new Histogram();
+    private final LongAdder Stalls = new LongAdder();
+    private volatile boolean IsClosed = false;
+}
@@ -0,0 +1,121 @@
+package server;
+
+import messages.transport.MpscQueue;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class EventLoop implements Runnable {
+    public EventLoop(Server server, int id) throws IOException {
+        ControlServer = server;
+        ID = id;
+        LoopSelector = Selector.open();
+    }
+
+    @Override
+    public void run() {
+        Server.LOGGER.info("event loop " + ID + " started");
+        try {
+            while (!Thread.interrupted() && ControlServer.isRunning()) {
+                LoopSelector.select();
+                WakeupPending.set(false);
+                ClientHandler handler;
+                while ((handler = registrations.poll()) != null) {
+                    try {
+                        handler.register(LoopSelector);
+                    }
+                    catch (IOException e) {
+                        ControlServer.LOG.info(handler.getUSID(), "cannot register connection, error: {}", e.getMessage());
+                        handler.close();
+                    }
+                    catch (RuntimeException e) {
+                        fail(handler, e);
+                    }
+                }
+                var iter = LoopSelector.selectedKeys().iterator();
+                while (iter.hasNext()) {
+                    SelectionKey key = iter.next();
+                    iter.remove();
+                    handler = (ClientHandler) key.attachment();
+                    try {
+                        if (!key.isValid() || !handler.handleKey(key)) {
+                            handler.close();
+                        }
+                    }
+                    catch (IOException e) {
+                        ControlServer.LOG.info(handler.getUSID(), "connection has been corrupted, error: {}", e.getMessage());
+                        handler.close();
+                    }
+                    catch (RuntimeException e) {
+                        fail(handler, e);
+                    }
+                }
+                while ((handler = writeRequests.poll()) != null) {
+                    try {
+                        if (!handler.updateInterest()) {
+                            handler.close();
+                        }
+                    }
+                    catch (RuntimeException e) {
+                        fail(handler, e);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            Server.LOGGER.info("event loop " + ID + " selector IO exception " + e.getMessage());
+        }
+        finally {
+            for (SelectionKey key : LoopSelector.keys()) {
+                ((ClientHandler) key.attachment()).close();
+            }
+            try {
+                LoopSelector.close();
+            } catch (IOException e) {
+                Server.LOGGER.info("event loop " + ID + "; ignored exception on closing Selector");
+            }
+        }
+    }
+
+    private void fail(ClientHandler handler, RuntimeException e) {
+        ControlServer.LOG.warning(handler.getUSID(), "connection handler failed, closing it: {}", e);
+        try {
+            handler.close();
+        }
+        catch (RuntimeException ignored) {
+            Server.LOGGER.info("event loop " + ID + "; ignored exception on closing failed handler");
+        }
+    }
+
+    public void register(ClientHandler handler) {
+        handler.bind(this);
+        registrations.offer(handler);
+        wakeup();
+    }
+
+    void requestWrite(ClientHandler handler) {
+        writeRequests.offer(handler);
+        wakeup();
+    }
+
+    private void wakeup() {
+        if (!WakeupPending.get() && WakeupPending.compareAndSet(false, true)) {
+            LoopSelector.wakeup();
+        }
+    }
+
+    Selector getSelector() {
+        return LoopSelector;
+    }
+
+    private final Server ControlServer;
+    private final int ID;
+    private final Selector LoopSelector;
+    private final Queue<ClientHandler> registrations = new ConcurrentLinkedQueue<>();
+    private final MpscQueue<ClientHandler> writeRequests = new MpscQueue<>();
+    private final AtomicBoolean WakeupPending = new AtomicBoolean(false);
+}
@@ -0,0 +1,17 @@
+package server;
+
+public enum ExecutionMode {
+    THREAD,
+    REACTOR,
+    VIRTUAL;
+
+    public static ExecutionMode parse(String value) {
+        switch (value) {
+            case ("thread") -> { return THREAD; }
+            case ("reactor") -> { return REACTOR; }
+            case ("virtual") -> { return VIRTUAL; }
+
+            default -> throw new RuntimeException("unknown execution mode: " + value);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package server;
+
+import messages.transport.MpscQueue;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class IdleWheel implements Runnable {
+    public IdleWheel(long tickMillis, int slots, long pingMillis, long timeoutMillis) {
+        if (Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException("idle wheel slots must be a power of two, got " + slots);
+        }
+        TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        TIMEOUT_TICKS = Math.max(1, timeoutMillis / tickMillis);
+        PING_TICKS = pingMillis > 0 && pingMillis < timeoutMillis ? Math.max(1, pingMillis / tickMillis) : 0;
+        Slots = newSlots(slots);
+        for (int i = 0; i < slots; ++i) {
+            Slots[i] = new ArrayDeque<>();
+        }
+        MASK = slots - 1;
+    }
+
+    public void start() {
+        Worker = new Thread(this, "idle-wheel");
+        Worker.setDaemon(true);
+        Worker.start();
+    }
+
+    public long now() {
+        return Tick;
+    }
+
+    public void watch(ClientHandler handler) {
+        Registrations.offer(handler);
+    }
+
+    public long getWatchedCount() {
+        return Watched;
+    }
+
+    public long getPings() {
+        return Pings.sum();
+    }
+
+    public long getReaped() {
+        return Reaped.sum();
+    }
+
+    public void close() {
+        if (Worker != null) {
+            Worker.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        long origin = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            long wait = origin + (Tick + 1) * TICK_NANOS - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            advance();
+        }
+    }
+
+    void advance() {
+        long tick = Tick + 1;
+        Tick = tick;
+        ClientHandler handler;
+        while ((handler = Registrations.poll()) != null) {
+            schedule(new Entry(handler), handler.getLastActivity() + firstDeadline());
+            ++Watched;
+        }
+        ArrayDeque<Entry> slot = Slots[(int) (tick & MASK)];
+        for (int i = slot.size(); i > 0; --i) {
+            Entry entry = slot.poll();
+            if (!entry.Handler.isOpen() || entry.Handler.isIdleExempt()) {
+                --Watched;
+            }
+            else if (entry.Deadline > tick) {
+                slot.offer(entry);
+            }
+            else {
+                expire(entry, tick);
+            }
+        }
+    }
+
+    private void expire(Entry entry, long tick) {
+        long last = entry.Handler.getLastActivity();
+        long idle = tick - last;
+        if (idle >= TIMEOUT_TICKS) {
+            --Watched;
+            Reaped.increment();
+            entry.Handler.reap(TimeUnit.NANOSECONDS.toMillis(idle * TICK_NANOS));
+            return;
+        }
+        if (PING_TICKS > 0 && idle >= PING_TICKS) {
+            if (entry.Handler.acceptsPings() && entry.PingedAt <= last) {
+                entry.PingedAt = tick;
+                Pings.increment();
+                entry.Handler.ping(tick);
+            }
+            schedule(entry, last + TIMEOUT_TICKS);
+            return;
+        }
+        schedule(entry, last + firstDeadline());
+    }
+
+    private long firstDeadline() {
+        return PING_TICKS > 0 ? PING_TICKS : TIMEOUT_TICKS;
+    }
+
+    private void schedule(Entry entry, long deadline) {
+        entry.Deadline = Math.max(deadline, Tick + 1);
+        Slots[(int) (entry.Deadline & MASK)].offer(entry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<Entry>[] newSlots(int slots) {
+        return (ArrayDeque<Entry>[]) new ArrayDeque<?>[slots];
+    }
+
+    private static final class Entry {
+        Entry(ClientHandler handler) {
+            Handler = handler;
+        }
+
+        final ClientHandler Handler;
+        long Deadline;
+        long PingedAt = -1;
+    }
+
+    private final long TICK_NANOS;
+    private final long TIMEOUT_TICKS;
+    private final long PING_TICKS;
+    private final int MASK;
+    private final ArrayDeque<Entry>[] Slots;
+    private final MpscQueue<ClientHandler> Registrations = new MpscQueue<>();
+    private final LongAdder Pings = new LongAdder();
+    private final LongAdder Reaped = new LongAdder();
+    private volatile long Tick = 0;
+    private volatile long Watched = 0;
+    private Thread Worker;
+}
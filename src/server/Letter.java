@@ -0,0 +1,5 @@
+package server;
+
+import java.nio.ByteBuffer;
+
+record Letter(String from, long id, ByteBuffer frame) {  }
@@ -0,0 +1,134 @@
+package server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+class Mailbox {
+    Mailbox(Path file) throws IOException {
+        Storage = file;
+        if (file != null && Files.exists(file)) {
+            List<Letter> letters = readSpilled();
+            rewrite(letters);
+            Spilled = letters.size();
+            SpilledBytes = Files.size(file);
+        }
+    }
+
+    int size() {
+        return Memory.size() + Spilled;
+    }
+
+    int getMemoryCount() {
+        return Memory.size();
+    }
+
+    long getSpilledBytes() {
+        return SpilledBytes;
+    }
+
+    boolean hasSpilled() {
+        return Spilled > 0;
+    }
+
+    void add(Letter letter) {
+        Memory.offer(letter);
+    }
+
+    long spill(Letter letter) throws IOException {
+        int written;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                Storage,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND
+        )))) {
+            write(out, letter);
+            written = out.size();
+        }
+        ++Spilled;
+        SpilledBytes += written;
+        return written;
+    }
+
+    List<Letter> drain() throws IOException {
+        List<Letter> letters = new ArrayList<>(Memory);
+        Memory.clear();
+        if (Spilled > 0) {
+            letters.addAll(readSpilled());
+            Files.deleteIfExists(Storage);
+            Spilled = 0;
+            SpilledBytes = 0;
+        }
+        return letters;
+    }
+
+    void persist() throws IOException {
+        if (Storage == null || Memory.isEmpty()) {
+            return;
+        }
+        List<Letter> letters = new ArrayList<>(Memory);
+        if (Spilled > 0) {
+            letters.addAll(readSpilled());
+        }
+        rewrite(letters);
+        Spilled = letters.size();
+        SpilledBytes = Files.size(Storage);
+        Memory.clear();
+    }
+
+    private void rewrite(List<Letter> letters) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Storage)))) {
+            for (Letter letter : letters) {
+                write(out, letter);
+            }
+        }
+    }
+
+    private List<Letter> readSpilled() throws IOException {
+        List<Letter> letters = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Storage)))) {
+            while (true) {
+                int nameSize;
+                try {
+                    nameSize = in.readInt();
+                }
+                catch (EOFException e) {
+                    break;
+                }
+                String from = new String(in.readNBytes(nameSize), StandardCharsets.UTF_8);
+                long id = in.readLong();
+                byte[] frame = new byte[in.readInt()];
+                in.readFully(frame);
+                letters.add(new Letter(from, id, ByteBuffer.wrap(frame).asReadOnlyBuffer()));
+            }
+        }
+        catch (EOFException e) {
+            Server.LOGGER.info("mailbox " + Storage + " ends with a torn letter, dropping it");
+        }
+        return letters;
+    }
+
+    private static void write(DataOutputStream out, Letter letter) throws IOException {
+        byte[] from = letter.from().getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[letter.frame().remaining()];
+        letter.frame().duplicate().get(frame);
+        out.writeInt(from.length);
+        out.write(from);
+        out.writeLong(letter.id());
+        out.writeInt(frame.length);
+        out.write(frame);
+    }
+
+    private final Path Storage;
+    private final Deque<Letter> Memory = new ArrayDeque<>();
+    private int Spilled = 0;
+    private long SpilledBytes = 0;
+}
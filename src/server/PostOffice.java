@@ -0,0 +1,203 @@
+package server;
+
+import messages.*;
+import messages.parsing.ParsingException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+public class PostOffice {
+    public PostOffice(Server server, Path directory, int capacity, int memoryLetters, int maxMailboxes, long diskBytes) {
+        ControlServer = server;
+        Directory = directory;
+        CAPACITY = capacity;
+        MEMORY_LETTERS = memoryLetters;
+        MAX_MAILBOXES = maxMailboxes;
+        DISK_BYTES = diskBytes;
+        for (int i = 0; i < Locks.length; ++i) {
+            Locks[i] = new Object();
+        }
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+                try (Stream<Path> files = Files.list(directory)) {
+                    for (Path file : files.filter(file -> file.toString().endsWith(MAILBOX_SUFFIX)).toList()) {
+                        SpilledBytes.addAndGet(Files.size(file));
+                    }
+                }
+            }
+            catch (IOException e) {
+                throw new RuntimeException("cannot open mailbox directory " + directory, e);
+            }
+        }
+    }
+
+    public ServerPrivateReceipt.Status send(String from, ClientPrivateMessage message) {
+        Message delivery = new Message(
+                MessageType.SERVER_PRIVATE_MESSAGE,
+                new ServerPrivateMessage(from, message.message(), message.id(), System.currentTimeMillis())
+        );
+        ClientHandler handler = Routes.get(message.to());
+        if (handler != null) {
+            handler.addOutputMessage(delivery);
+            return ServerPrivateReceipt.Status.DELIVERED;
+        }
+        synchronized (lockFor(message.to())) {
+            handler = Routes.get(message.to());
+            if (handler != null) {
+                handler.addOutputMessage(delivery);
+                return ServerPrivateReceipt.Status.DELIVERED;
+            }
+            if (Unroutable.containsKey(message.to())) {
+                return ServerPrivateReceipt.Status.REJECTED;
+            }
+            return store(message.to(), from, message.id(), delivery);
+        }
+    }
+
+    public void connect(String name, ClientHandler handler) {
+        List<Letter> letters;
+        synchronized (lockFor(name)) {
+            letters = collect(name);
+            ByteBuffer[] frames = new ByteBuffer[letters.size()];
+            for (int i = 0; i < frames.length; ++i) {
+                frames[i] = letters.get(i).frame();
+            }
+            handler.addOutputFrames(frames);
+            ControlServer.METRICS.recordOut(MessageType.SERVER_PRIVATE_MESSAGE, frames.length);
+            Routes.put(name, handler);
+        }
+        if (letters.isEmpty()) {
+            return;
+        }
+        Server.LOGGER.info("delivered " + letters.size() + " stored private messages to " + name);
+        for (Letter letter : letters) {
+            ClientHandler sender = Routes.get(letter.from());
+            if (sender != null) {
+                sender.addOutputMessage(new Message(
+                        MessageType.SERVER_PRIVATE_RECEIPT,
+                        new ServerPrivateReceipt(name, letter.id(), ServerPrivateReceipt.Status.DELIVERED)
+                ));
+            }
+        }
+    }
+
+    public void connectLegacy(String name, ClientHandler handler) {
+        synchronized (lockFor(name)) {
+            Unroutable.put(name, handler);
+        }
+    }
+
+    public void disconnect(String name, ClientHandler handler) {
+        Routes.remove(name, handler);
+        Unroutable.remove(name, handler);
+    }
+
+    public void close() {
+        for (Map.Entry<String, Mailbox> entry : Mailboxes.entrySet()) {
+            synchronized (lockFor(entry.getKey())) {
+                try {
+                    entry.getValue().persist();
+                }
+                catch (IOException e) {
+                    Server.LOGGER.info("cannot persist mailbox of " + entry.getKey() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private ServerPrivateReceipt.Status store(String to, String from, long id, Message delivery) {
+        ByteBuffer frame;
+        try {
+            frame = ControlServer.PARSER.encodeFrame(delivery);
+        } catch (ParsingException e) {
+            Server.LOGGER.info("private message parser exception: " + e.getMessage());
+            return ServerPrivateReceipt.Status.REJECTED;
+        }
+        Letter letter = new Letter(from, id, frame.asReadOnlyBuffer());
+        try {
+            Mailbox mailbox = Mailboxes.get(to);
+            boolean created = mailbox == null;
+            if (created) {
+                if (Mailboxes.size() >= MAX_MAILBOXES) {
+                    Server.LOGGER.info("too many mailboxes, rejecting private message for " + to);
+                    return ServerPrivateReceipt.Status.REJECTED;
+                }
+                mailbox = new Mailbox(Directory == null ? null : fileFor(to));
+            }
+            if (mailbox.size() >= CAPACITY) {
+                return ServerPrivateReceipt.Status.REJECTED;
+            }
+            if (!mailbox.hasSpilled() && MemoryCount.get() < MEMORY_LETTERS) {
+                MemoryCount.incrementAndGet();
+                mailbox.add(letter);
+            }
+            else if (Directory != null && SpilledBytes.get() < DISK_BYTES) {
+                SpilledBytes.addAndGet(mailbox.spill(letter));
+            }
+            else {
+                return ServerPrivateReceipt.Status.REJECTED;
+            }
+            if (created) {
+                Mailboxes.put(to, mailbox);
+            }
+        }
+        catch (IOException e) {
+            Server.LOGGER.info("cannot store private message for " + to + ": " + e.getMessage());
+            return ServerPrivateReceipt.Status.REJECTED;
+        }
+        return ServerPrivateReceipt.Status.STORED;
+    }
+
+    private List<Letter> collect(String name) {
+        try {
+            Mailbox mailbox = Mailboxes.remove(name);
+            if (mailbox == null && Directory != null && Files.exists(fileFor(name))) {
+                mailbox = new Mailbox(fileFor(name));
+            }
+            if (mailbox == null) {
+                return List.of();
+            }
+            MemoryCount.addAndGet(-mailbox.getMemoryCount());
+            SpilledBytes.addAndGet(-mailbox.getSpilledBytes());
+            return mailbox.drain();
+        }
+        catch (IOException e) {
+            Server.LOGGER.info("cannot read mailbox of " + name + ": " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    private Object lockFor(String name) {
+        return Locks[(name.hashCode() & 0x7FFFFFFF) % Locks.length];
+    }
+
+    private Path fileFor(String name) {
+        return Directory.resolve(UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)) + MAILBOX_SUFFIX);
+    }
+
+    private final Server ControlServer;
+    private final Path Directory;
+    private final int CAPACITY;
+    private final int MEMORY_LETTERS;
+    private final int MAX_MAILBOXES;
+    private final long DISK_BYTES;
+    private final Map<String, ClientHandler> Routes = new ConcurrentHashMap<>();
+    private final Map<String, ClientHandler> Unroutable = new ConcurrentHashMap<>();
+    private final Map<String, Mailbox> Mailboxes = new ConcurrentHashMap<>();
+    private final AtomicInteger MemoryCount = new AtomicInteger(0);
+    private final AtomicLong SpilledBytes = new AtomicLong(0);
+    private final Object[] Locks = new Object[LOCK_STRIPES];
+    private static final int LOCK_STRIPES = 64;
+    private static final String MAILBOX_SUFFIX = ".mbox";
+}
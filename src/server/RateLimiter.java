@@ -0,0 +1,107 @@
+package server;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+public class RateLimiter {
+    public RateLimiter(double sessionRate, int sessionBurst, double userRate, int userBurst) {
+        SESSION_RATE = sessionRate;
+        SESSION_BURST = sessionBurst;
+        USER_RATE = userRate;
+        USER_BURST = userBurst;
+    }
+
+    TokenBucket newSessionBucket() {
+        return SESSION_RATE > 0 ? new TokenBucket(SESSION_RATE, SESSION_BURST) : null;
+    }
+
+    TokenBucket acquireUserBucket(String name) {
+        return acquireUserBucket(name, System.nanoTime());
+    }
+
+    TokenBucket acquireUserBucket(String name, long now) {
+        if (USER_RATE <= 0) {
+            return null;
+        }
+        expire(now);
+        return UserBuckets.computeIfAbsent(name, key -> new TokenBucket(USER_RATE, USER_BURST, now));
+    }
+
+    void releaseUserBucket(String name, TokenBucket bucket) {
+        releaseUserBucket(name, bucket, System.nanoTime());
+    }
+
+    void releaseUserBucket(String name, TokenBucket bucket, long now) {
+        if (bucket == null) {
+            return;
+        }
+        if (bucket.isFull(now)) {
+            UserBuckets.remove(name, bucket);
+        }
+        else {
+            Retired.offer(new RetiredBucket(name, bucket, now + bucket.getRefillNanos()));
+        }
+        expire(now);
+    }
+
+    boolean tryAcquire(TokenBucket session, TokenBucket user) {
+        return tryAcquire(session, user, System.nanoTime());
+    }
+
+    boolean tryAcquire(TokenBucket session, TokenBucket user, long now) {
+        if (session != null && !session.tryTake(now)) {
+            ThrottledBySession.increment();
+            return false;
+        }
+        if (user != null && !user.tryTake(now)) {
+            if (session != null) {
+                session.giveBack();
+            }
+            ThrottledByUser.increment();
+            return false;
+        }
+        return true;
+    }
+
+    public long getThrottledBySession() {
+        return ThrottledBySession.sum();
+    }
+
+    public long getThrottledByUser() {
+        return ThrottledByUser.sum();
+    }
+
+    public int getUserBucketCount() {
+        return UserBuckets.size();
+    }
+
+    @Override
+    public String toString() {
+        return "throttled session=" + getThrottledBySession() + " user=" + getThrottledByUser()
+                + " userBuckets=" + getUserBucketCount();
+    }
+
+    private void expire(long now) {
+        RetiredBucket head;
+        while ((head = Retired.peek()) != null && head.fullAt() - now <= 0) {
+            if (Retired.remove(head) && head.bucket().isFull(now)) {
+                UserBuckets.remove(head.name(), head.bucket());
+            }
+        }
+    }
+
+    private record RetiredBucket(String name, TokenBucket bucket, long fullAt) {
+    }
+
+    private final double SESSION_RATE;
+    private final int SESSION_BURST;
+    private final double USER_RATE;
+    private final int USER_BURST;
+    private final Map<String, TokenBucket> UserBuckets = new ConcurrentHashMap<>();
+    private final Queue<RetiredBucket> Retired = new ConcurrentLinkedQueue<>();
+    private final LongAdder ThrottledBySession = new LongAdder();
+    private final LongAdder ThrottledByUser = new LongAdder();
+}
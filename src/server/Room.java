@@ -0,0 +1,179 @@
+package server;
+
+import messages.Message;
+import messages.MessageType;
+import messages.ServerMessage;
+import messages.ServerRoomEvent;
+import messages.parsing.ParsingException;
+import messages.transport.PooledBuffer;
+import server.history.LogRecord;
+import server.history.MessageLog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class Room {
+    public Room(Server server, String name, MessageLog history, int backlogCapacity) {
+        ControlServer = server;
+        Name = name;
+        History = history;
+        Backlog = new BacklogRing(backlogCapacity);
+        if (History != null) {
+            for (LogRecord record : History.readLast(Backlog.getCapacity())) {
+                Backlog.add(record.frame());
+            }
+        }
+    }
+
+    public String getName() {
+        return Name;
+    }
+
+    public int getMemberCount() {
+        return Subscribers.size();
+    }
+
+    public boolean join(ClientHandler handler, String name) {
+        synchronized (PublishLock) {
+            if (!Subscribers.add(handler)) {
+                return false;
+            }
+            if (name != null) {
+                fanOut(new Message(MessageType.SERVER_ROOM_JOINED, new ServerRoomEvent(Name, name)));
+            }
+            ByteBuffer[] backlog = Backlog.snapshot();
+            handler.addOutputFrames(backlog, true);
+            ControlServer.METRICS.recordOut(MessageType.SERVER_MESSAGE, backlog.length);
+        }
+        return true;
+    }
+
+    public boolean leave(ClientHandler handler, String name) {
+        if (!Subscribers.remove(handler)) {
+            return false;
+        }
+        if (name != null) {
+            Message event = new Message(MessageType.SERVER_ROOM_LEFT, new ServerRoomEvent(Name, name));
+            synchronized (PublishLock) {
+                fanOut(event);
+            }
+            handler.addOutputMessage(event);
+        }
+        return true;
+    }
+
+    public void publish(String text, String name) {
+        synchronized (PublishLock) {
+            long id = History != null ? History.getNextOffset() : NextMessageId++;
+            PooledBuffer frame;
+            try {
+                frame = ControlServer.PARSER.encodeFrame(new Message(
+                        MessageType.SERVER_MESSAGE,
+                        new ServerMessage(text, name, id, Name)
+                ), ControlServer.POOL);
+            } catch (ParsingException e) {
+                Server.LOGGER.info("room " + Name + " parser exception: " + e.getMessage());
+                return;
+            }
+            try {
+                if (History != null) {
+                    Backlog.add(History.append(frame.buffer()).frame());
+                }
+                else {
+                    Backlog.add(copyFrame(frame.buffer()));
+                }
+            }
+            catch (IOException e) {
+                Server.LOGGER.info("room " + Name + " message log append failed: " + e.getMessage());
+            }
+            try {
+                ControlServer.METRICS.recordOut(MessageType.SERVER_MESSAGE, fanOut(frame, true));
+            }
+            finally {
+                frame.release();
+            }
+        }
+    }
+
+    public ArrayList<ServerMessage> read(long before, int limit) {
+        ArrayList<ServerMessage> messages = new ArrayList<>();
+        if (History == null || limit <= 0) {
+            return messages;
+        }
+        before = Math.min(before, History.getNextOffset());
+        long from = Math.max(History.getStartOffset(), before - limit);
+        if (from >= before) {
+            return messages;
+        }
+        for (LogRecord record : History.read(from, (int) (before - from))) {
+            ByteBuffer frame = record.frame();
+            try {
+                Message message = ControlServer.PARSER.parse(frame.slice(
+                        frame.position() + Integer.BYTES,
+                        frame.remaining() - Integer.BYTES
+                ));
+                ServerMessage stored = (ServerMessage) message.getMessage();
+                messages.add(new ServerMessage(stored.message(), stored.name(), record.offset(), Name));
+            } catch (ParsingException | ClassCastException e) {
+                Server.LOGGER.info("room " + Name + " skipping unreadable history record " + record.offset() + ": " + e.getMessage());
+            }
+        }
+        return messages;
+    }
+
+    public void close() {
+        if (History == null) {
+            return;
+        }
+        try {
+            History.close();
+        }
+        catch (IOException e) {
+            Server.LOGGER.info("room " + Name + " cannot close message log: " + e.getMessage());
+        }
+    }
+
+    private void fanOut(Message message) {
+        PooledBuffer frame;
+        try {
+            frame = ControlServer.PARSER.encodeFrame(message, ControlServer.POOL);
+        } catch (ParsingException e) {
+            Server.LOGGER.info("room " + Name + " parser exception: " + e.getMessage());
+            return;
+        }
+        try {
+            ControlServer.METRICS.recordOut(message.getType(), fanOut(frame, false));
+        }
+        finally {
+            frame.release();
+        }
+    }
+
+    private int fanOut(PooledBuffer frame, boolean droppable) {
+        long started = System.nanoTime();
+        int recipients = 0;
+        for (ClientHandler handler : Subscribers) {
+            handler.addOutputFrame(frame, droppable);
+            ++recipients;
+        }
+        ControlServer.METRICS.recordFanOut(started, recipients);
+        return recipients;
+    }
+
+    private static ByteBuffer copyFrame(ByteBuffer frame) {
+        ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+        copy.put(frame.duplicate());
+        return copy.flip().asReadOnlyBuffer();
+    }
+
+    private final Server ControlServer;
+    private final String Name;
+    private final MessageLog History;
+    private final BacklogRing Backlog;
+    private final Set<ClientHandler> Subscribers = ConcurrentHashMap.newKeySet();
+    private final Object PublishLock = new Object();
+    private long NextMessageId = 0;
+}
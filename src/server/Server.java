@@ -2,39 +2,204 @@ package server;
 
 import messages.*;
 import messages.parsing.MessageReadWrite;
-import messages.parsing.serialization.SerializationParser;
-import messages.parsing.xml.XMLParser;
+import messages.parsing.ParsingException;
+import messages.transport.BufferPool;
+import messages.transport.PooledBuffer;
+import server.cluster.ClaimResult;
+import server.cluster.ClusterListener;
+import server.cluster.ClusterNode;
+import server.history.MessageLog;
+import server.logging.AsyncAppender;
+import server.logging.StructuredLog;
+import server.metrics.MeteredReadWrite;
+import server.metrics.MetricsEndpoint;
+import server.metrics.MetricsRegistry;
 
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
-public class Server {
+public class Server implements ClusterListener {
     public static final Logger LOGGER = Logger.getGlobal();
+    public final StructuredLog LOG;
+    public final ServerMetrics METRICS = new ServerMetrics(new MetricsRegistry());
     public final MessageReadWrite PARSER;
-    private static final int BACKLOG_COUNT = 10;
+    public final BufferPool POOL = new BufferPool(BUFFER_POOL_MIN, BUFFER_POOL_MAX, BUFFER_POOL_DEPTH);
+    private static final int BUFFER_POOL_MIN = 256;
+    private static final int BUFFER_POOL_MAX = 16384;
+    private static final int BUFFER_POOL_DEPTH = 1024;
+    public final TransportStats STATS = new TransportStats();
+    public final RateLimiter LIMITER;
+    final int FLUSH_BYTES;
+    final int COALESCE_BYTES;
+    final int MAX_FRAME_BYTES;
+    final long OUTPUT_HIGH_WATERMARK;
+    final long OUTPUT_LOW_WATERMARK;
+    final SlowConsumerPolicy SLOW_POLICY;
+    static final int READ_BUFFER_SIZE = BUFFER_POOL_MAX;
+    static final int BLOCKING_READ_SIZE = 1024;
+    private static final int HISTORY_PAGE_LIMIT = 200;
     private final int PORT;
+    private final ExecutionMode Mode;
+    private final int IO_THREADS;
     public static final long TIMEOUT = 100;
+    private static final int IDLE_WHEEL_SLOTS = 512;
+    public final IdleWheel IDLE_WHEEL;
+    public final Dispatcher DISPATCHER;
     private static final String ADDRESS = "0.0.0.0";
     public Server(int port) {
         final boolean LOGGING = Boolean.parseBoolean(ServerConfigurations.getFieldValue(ServerConfigurations.Field.LOGGING));
-        if (LOGGING) {
-            LOGGER.setLevel(Level.ALL);
-        }
-        else {
-            LOGGER.setLevel(Level.OFF);
-        }
+        String level = ServerConfigurations.getFieldValue(ServerConfigurations.Field.LOGGING_LEVEL);
+        LOGGER.setLevel(level != null ? Level.parse(level.toUpperCase()) : LOGGING ? Level.ALL : Level.OFF);
+        LOG = openLog(LOGGER.getLevel());
         PORT = port;
         final boolean XML = Boolean.parseBoolean(ServerConfigurations.getFieldValue(ServerConfigurations.Field.XML));
-        if (XML) {
-            PARSER = new XMLParser();
+        final String codec = ServerConfigurations.getFieldValue(
+                ServerConfigurations.Field.CODEC,
+                XML ? "xml" : "serialization"
+        );
+        MAX_FRAME_BYTES = Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.MAX_FRAME_BYTES, "1048576"));
+        PARSER = new MeteredReadWrite(MessageReadWrite.forName(codec, MAX_FRAME_BYTES), codec, METRICS.getRegistry());
+        Mode = checkMode(ExecutionMode.parse(ServerConfigurations.getFieldValue(ServerConfigurations.Field.EXECUTION, "reactor")));
+        int ioThreads = Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.IO_THREADS, "0"));
+        IO_THREADS = ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors();
+        FLUSH_BYTES = Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.FLUSH_BYTES, "262144"));
+        COALESCE_BYTES = Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.COALESCE_BYTES, "0"));
+        OUTPUT_HIGH_WATERMARK = Long.parseLong(ServerConfigurations.getFieldValue(ServerConfigurations.Field.OUTPUT_HIGH_WATERMARK, "4194304"));
+        OUTPUT_LOW_WATERMARK = Math.min(
+                OUTPUT_HIGH_WATERMARK,
+                Long.parseLong(ServerConfigurations.getFieldValue(ServerConfigurations.Field.OUTPUT_LOW_WATERMARK, "1048576"))
+        );
+        SLOW_POLICY = SlowConsumerPolicy.parse(ServerConfigurations.getFieldValue(ServerConfigurations.Field.SLOW_CONSUMER_POLICY, "drop_oldest"));
+        long idleTimeout = Long.parseLong(ServerConfigurations.getFieldValue(ServerConfigurations.Field.IDLE_TIMEOUT_MS, "90000"));
+        IDLE_WHEEL = idleTimeout <= 0 ? null : new IdleWheel(
+                TIMEOUT,
+                IDLE_WHEEL_SLOTS,
+                Long.parseLong(ServerConfigurations.getFieldValue(ServerConfigurations.Field.IDLE_PING_MS, "30000")),
+                idleTimeout
+        );
+        LIMITER = new RateLimiter(
+                Double.parseDouble(ServerConfigurations.getFieldValue(ServerConfigurations.Field.SESSION_MESSAGE_RATE, "20")),
+                Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.SESSION_MESSAGE_BURST, "40")),
+                Double.parseDouble(ServerConfigurations.getFieldValue(ServerConfigurations.Field.USER_MESSAGE_RATE, "20")),
+                Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.USER_MESSAGE_BURST, "40"))
+        );
+        int dispatchThreads = Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.DISPATCH_THREADS, "0"));
+        int dispatchCapacity = Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.DISPATCH_QUEUE_CAPACITY, "4096"));
+        DISPATCHER = dispatchCapacity <= 0 ? null : new Dispatcher(
+                this,
+                dispatchThreads > 0 ? dispatchThreads : Runtime.getRuntime().availableProcessors(),
+                dispatchCapacity
+        );
+        BACKLOG_CAPACITY = Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.BACKLOG_CAPACITY, "10"));
+        String directory = ServerConfigurations.getFieldValue(ServerConfigurations.Field.LOG_DIR);
+        HistoryDirectory = directory == null ? null : Path.of(directory, codec);
+        LogFlusher = directory == null ? null : MessageLog.newFlusher();
+        Post = new PostOffice(
+                this,
+                directory == null ? null : Path.of(directory, "mailbox", codec),
+                Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.MAILBOX_CAPACITY, "1000")),
+                Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.MAILBOX_MEMORY, "10000")),
+                Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.MAILBOX_COUNT, "10000")),
+                Long.parseLong(ServerConfigurations.getFieldValue(ServerConfigurations.Field.MAILBOX_DISK_BYTES, "268435456"))
+        );
+        String nodes = ServerConfigurations.getFieldValue(ServerConfigurations.Field.CLUSTER_NODES);
+        Cluster = nodes == null ? null : new ClusterNode(
+                Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.NODE_ID, "0")),
+                ClusterNode.parseNodes(nodes),
+                Long.parseLong(ServerConfigurations.getFieldValue(ServerConfigurations.Field.CLUSTER_CLAIM_TIMEOUT_MS, "3000")),
+                Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.CLUSTER_QUEUE_CAPACITY, "65536")),
+                this
+        );
+        DefaultRoom = openRoom(ClientRoom.DEFAULT_ROOM);
+        Rooms.put(DefaultRoom.getName(), DefaultRoom);
+        for (String room : ServerConfigurations.getFieldValue(ServerConfigurations.Field.ROOMS, "").split(",")) {
+            room = room.trim();
+            if (room.isEmpty() || Rooms.containsKey(room)) {
+                continue;
+            }
+            if (!ROOM_NAME.matcher(room).matches()) {
+                throw new RuntimeException("bad room name: " + room);
+            }
+            Rooms.put(room, openRoom(room));
         }
-        else {
-            PARSER = new SerializationParser();
+        int metricsPort = Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.METRICS_PORT, "0"));
+        MetricsHttp = metricsPort <= 0 ? null : new MetricsEndpoint(
+                METRICS.getRegistry(),
+                ServerConfigurations.getFieldValue(ServerConfigurations.Field.METRICS_ADDRESS, "127.0.0.1"),
+                metricsPort
+        );
+        if (MetricsHttp != null) {
+            MetricsHttp.addPage("/slow", this::describeSlowSessions);
+        }
+        METRICS.bind(this);
+    }
+
+    private static StructuredLog openLog(Level level) {
+        double sample = Double.parseDouble(ServerConfigurations.getFieldValue(ServerConfigurations.Field.LOGGING_SESSION_SAMPLE, "1"));
+        if (level == Level.OFF) {
+            return new StructuredLog(level, sample, null);
+        }
+        String file = ServerConfigurations.getFieldValue(ServerConfigurations.Field.LOGGING_FILE);
+        Writer out = null;
+        if (file != null) {
+            try {
+                out = Files.newBufferedWriter(
+                        Path.of(file),
+                        StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND
+                );
+            }
+            catch (IOException e) {
+                LOGGER.warning("cannot open log file " + file + ", logging to console: " + e.getMessage());
+            }
+        }
+        AsyncAppender appender = new AsyncAppender(
+                Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.LOGGING_BUFFER_SIZE, "8192")),
+                out,
+                LOGGER::info
+        );
+        appender.start();
+        return new StructuredLog(level, sample, appender);
+    }
+
+    private Room openRoom(String name) {
+        return new Room(this, name, openHistory(name), BACKLOG_CAPACITY);
+    }
+
+    private MessageLog openHistory(String room) {
+        if (HistoryDirectory == null) {
+            return null;
+        }
+        try {
+            return new MessageLog(
+                    HistoryDirectory.resolve(room),
+                    Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.LOG_SEGMENT_BYTES, "16777216")),
+                    Long.parseLong(ServerConfigurations.getFieldValue(ServerConfigurations.Field.LOG_RETENTION_BYTES, "1073741824")),
+                    Long.parseLong(ServerConfigurations.getFieldValue(ServerConfigurations.Field.LOG_RETENTION_MS, "604800000")),
+                    Long.parseLong(ServerConfigurations.getFieldValue(ServerConfigurations.Field.LOG_FLUSH_MS, "50")),
+                    Integer.parseInt(ServerConfigurations.getFieldValue(ServerConfigurations.Field.LOG_INDEX_INTERVAL, "4096")),
+                    LogFlusher
+            );
+        }
+        catch (IOException e) {
+            throw new RuntimeException("cannot open message log in " + HistoryDirectory.resolve(room), e);
         }
     }
 
@@ -45,6 +210,7 @@ public class Server {
     }
 
     public static void main(String[] args) {
+        ServerConfigurations.override(args);
         Server server = new Server();
         server.start();
     }
@@ -59,6 +225,22 @@ public class Server {
             serverChannel.bind(new InetSocketAddress(ADDRESS, PORT));
             serverChannel.configureBlocking(false);
             serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            if (Cluster != null) {
+                Cluster.start();
+            }
+            if (IDLE_WHEEL != null) {
+                IDLE_WHEEL.start();
+            }
+            if (DISPATCHER != null) {
+                DISPATCHER.start();
+            }
+            startMetrics();
+            if (Mode == ExecutionMode.REACTOR) {
+                startEventLoops();
+            }
+            else if (Mode == ExecutionMode.VIRTUAL) {
+                VirtualExecutor = newVirtualExecutor();
+            }
 
             LOGGER.info("listening to connections...");
             while (!Thread.interrupted()) {
@@ -70,12 +252,26 @@ public class Server {
                     if (key.isAcceptable()) {
                         SocketChannel channel = serverChannel.accept();
                         UUID usid = UUID.randomUUID();
-                        ClientHandler handler = new ClientHandler(channel, this, usid);
-                        Session session = new Session(false, null, handler);
+                        ClientHandler handler = new ClientHandler(channel, this, usid, Mode);
+                        Session session = new Session(
+                                false,
+                                null,
+                                handler,
+                                ConcurrentHashMap.newKeySet(),
+                                LIMITER.newSessionBucket(),
+                                null
+                        );
                         SessionMap.put(usid, session);
-                        Thread thread = new Thread(handler);
-                        thread.start();
-                        LOGGER.info("incoming socket connection USID: " + usid);
+                        METRICS.recordConnection();
+                        if (IDLE_WHEEL != null) {
+                            IDLE_WHEEL.watch(handler);
+                        }
+                        switch (Mode) {
+                            case THREAD -> new Thread(handler).start();
+                            case REACTOR -> Loops[Math.floorMod(NextLoop++, Loops.length)].register(handler);
+                            case VIRTUAL -> execute(handler);
+                        }
+                        LOG.info(usid, "incoming socket connection");
                     }
                 }
             }
@@ -92,13 +288,158 @@ public class Server {
                     new ServerError("Server closed")
             ));
             IsRunning.set(false);
+            if (IDLE_WHEEL != null) {
+                IDLE_WHEEL.close();
+            }
+            stopEventLoops();
+            if (DISPATCHER != null) {
+                DISPATCHER.close();
+            }
+            if (MetricsHttp != null) {
+                MetricsHttp.close();
+            }
+            if (Cluster != null) {
+                Cluster.close();
+            }
+            closeRooms();
+            if (LogFlusher != null) {
+                LogFlusher.shutdown();
+            }
+            Post.close();
+            LOGGER.info("buffer pool: " + POOL);
+            LOGGER.info("transport: " + STATS);
+            LOGGER.info("rate limiter: " + LIMITER);
+            if (DISPATCHER != null) {
+                LOGGER.info("dispatcher: " + DISPATCHER);
+            }
+            if (VirtualExecutor != null) {
+                VirtualExecutor.shutdownNow();
+            }
+            LOGGER.info("log records dropped: " + LOG.getDropped());
+            LOG.close();
+        }
+    }
+
+    private void closeRooms() {
+        for (Room room : Rooms.values()) {
+            room.close();
+        }
+    }
+
+    void execute(Runnable task) {
+        VirtualExecutor.execute(task);
+    }
+
+    private static ExecutionMode checkMode(ExecutionMode mode) {
+        if (mode == ExecutionMode.VIRTUAL && !hasVirtualThreads()) {
+            LOGGER.warning("execution=virtual needs Java 21 virtual threads, this JVM is " + Runtime.version() + ", using execution=reactor");
+            return ExecutionMode.REACTOR;
         }
+        return mode;
+    }
+
+    static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        }
+        catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static ExecutorService newVirtualExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new RuntimeException("cannot start virtual threads", e);
+        }
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return Mode;
+    }
+
+    private void startMetrics() {
+        if (MetricsHttp == null) {
+            return;
+        }
+        try {
+            MetricsHttp.start();
+            LOGGER.info("serving metrics on http:/" + MetricsHttp.getAddress() + "/metrics");
+        }
+        catch (IOException e) {
+            LOGGER.warning("cannot serve metrics on " + MetricsHttp.getAddress() + ": " + e.getMessage());
+        }
+    }
+
+    private void startEventLoops() throws IOException {
+        LOGGER.info("starting " + IO_THREADS + " event loops");
+        Loops = new EventLoop[IO_THREADS];
+        LoopThreads = new Thread[IO_THREADS];
+        for (int i = 0; i < IO_THREADS; ++i) {
+            Loops[i] = new EventLoop(this, i);
+            LoopThreads[i] = new Thread(Loops[i], "event-loop-" + i);
+            LoopThreads[i].start();
+        }
+    }
+
+    private void stopEventLoops() {
+        if (LoopThreads == null) {
+            return;
+        }
+        for (int i = 0; i < LoopThreads.length; ++i) {
+            LoopThreads[i].interrupt();
+            Loops[i].getSelector().wakeup();
+        }
+    }
+
+    int getSessionCount() {
+        return SessionMap.size();
+    }
+
+    int getAuthorisedCount() {
+        return Authorised.size();
+    }
+
+    long[] getOutputQueueStats() {
+        long total = 0;
+        long max = 0;
+        synchronized (SessionMap) {
+            for (Session session : SessionMap.values()) {
+                long queued = session.handler().getQueuedBytes();
+                total += queued;
+                max = Math.max(max, queued);
+            }
+        }
+        return new long[] {total, max};
     }
 
     public boolean isRunning() {
         return IsRunning.get();
     }
 
+    boolean dispatch(Message msg, UUID usid) {
+        if (DISPATCHER == null) {
+            handleMessage(msg, usid);
+            return true;
+        }
+        return DISPATCHER.submit(msg, usid);
+    }
+
+    void dispatchAction(UUID usid, Runnable action) {
+        if (DISPATCHER == null || !DISPATCHER.submitAction(usid, action)) {
+            action.run();
+        }
+    }
+
+    void dispatchClose(UUID usid) {
+        if (DISPATCHER == null || !DISPATCHER.submitClose(usid)) {
+            removeSession(usid);
+        }
+    }
+
     public void handleMessage(Message msg, UUID usid) {
         Session session = SessionMap.get(usid);
         if (session == null) {
@@ -107,92 +448,194 @@ public class Server {
         switch (msg.getType()) {
             case CLIENT_LOGIN -> {
                 ClientLogin login = (ClientLogin) msg.getMessage();
-                boolean alreadyExist = false;
-                synchronized (SessionMap) {
-                    for (Session s : SessionMap.values()) {
-                        if (s.isAuthorised())
-                            if (login.name().equals(s.login().name())) {
-                                alreadyExist = true;
-                                break;
-                            }
-                    }
-                }
-                LOGGER.info("USID: " + usid + "; Login attempt with name " + login.name());
-                if (alreadyExist) {
-                    LOGGER.info("USID: " + usid + "; Existing username " + login.name());
+                LOG.info(usid, "login attempt with name {}", login.name());
+                if (session.isAuthorised()) {
+                    LOG.info(usid, "repeated login as {}", login.name());
                     session.handler().addOutputMessage(new Message(
-                            MessageType.SERVER_ERROR, new ServerError("this username already exists")
+                            MessageType.SERVER_ERROR, new ServerError("You are already authorized")
                     ));
+                    return;
                 }
-                else {
-                    LOGGER.info("USID: " + usid + "; New user authorized " + login.name() + "; Client: " + login.client());
-                    SessionMap.replace(
-                            usid,
-                            new Session(true, login, session.handler())
-                    );
+                if (!PendingLogins.add(usid)) {
                     session.handler().addOutputMessage(new Message(
-                            MessageType.SERVER_LOGIN_SUCCESS,
-                            new ServerClientSessionID(usid)
+                            MessageType.SERVER_ERROR, new ServerError("login is already in progress")
                     ));
-                    LOGGER.info("USID: " + usid + ": Sending backlogs to new user");
-                    synchronized (Backlog) {
-                        for (ServerMessage m : Backlog) {
-                            session.handler().addOutputMessage(new Message(
-                                    MessageType.SERVER_MESSAGE,
-                                    m
-                            ));
-                        }
+                    return;
+                }
+                if (Cluster == null) {
+                    finishLogin(usid, login, ClaimResult.GRANTED);
+                }
+                else {
+                    CompletableFuture<ClaimResult> claim = Cluster.claim(login.name(), usid);
+                    if (claim.isDone()) {
+                        finishLogin(usid, login, claim.join());
+                    }
+                    else {
+                        claim.thenAccept(result -> dispatchAction(usid, () -> finishLogin(usid, login, result)));
                     }
-                    LOGGER.info("Broadcasting about new user to everyone");
-                    broadcast(new Message(
-                            MessageType.SERVER_USER_LOGIN,
-                            new ServerUserName(login.name())
-                    ));
                 }
             }
+            case CLIENT_PING -> {
+                Heartbeat ping = (Heartbeat) msg.getMessage();
+                session.handler().addOutputMessage(new Message(MessageType.SERVER_PONG, ping));
+            }
+            case CLIENT_PONG -> {  }
             case CLIENT_LIST_REQUEST -> {
-                LOGGER.info("USID " + usid + ": requested list of users");
+                LOG.info(usid, "requested list of users");
                 if (!session.isAuthorised()) {
-                    LOGGER.info("USID " + usid + ": list access denied");
+                    LOG.info(usid, "list access denied");
                     session.handler().addOutputMessage(new Message(
                             MessageType.SERVER_ERROR,
                             new ServerError("You are not authorized")
                     ));
                 }
                 else {
-                    LOGGER.info("USID " + usid + ": sending list");
-                    ServerList serverList;
-                    synchronized (SessionMap) {
-                        serverList = new ServerList(new ArrayList<>(SessionMap
-                                .values().stream()
-                                .filter(Session::isAuthorised)
-                                .map((Session::login))
-                                .toList()
-                        ));
-                    }
-                    session.handler().addOutputMessage(new Message(
-                            MessageType.SERVER_LIST_RESPONSE,
-                            serverList
-                    ));
+                    LOG.info(usid, "sending list");
+                    sendUserList(session.handler());
                 }
             }
             case CLIENT_MESSAGE -> {
                 if (session.isAuthorised()) {
                     ClientMessage message = (ClientMessage) msg.getMessage();
-                    ServerMessage serverMessage = new ServerMessage(message.message(), session.login().name());
-                    backlog(serverMessage);
+                    Room room = getJoinedRoom(session, message.room());
+                    if (room == null) {
+                        LOG.info(usid, "message to a room the user is not in");
+                        session.handler().addOutputMessage(new Message(
+                                MessageType.SERVER_ERROR,
+                                new ServerError("You are not in this room")
+                        ));
+                        return;
+                    }
+                    if (!LIMITER.tryAcquire(session.sessionLimit(), session.userLimit())) {
+                        session.handler().addOutputMessage(new Message(
+                                MessageType.SERVER_ERROR,
+                                new ServerError("You are sending messages too fast")
+                        ));
+                        return;
+                    }
                     session.handler().addOutputMessage(new Message(
                             MessageType.SERVER_EMPTY_SUCCESS,
                             null
                     ));
-                    broadcast(new Message(
-                            MessageType.SERVER_MESSAGE,
-                            serverMessage
+                    room.publish(message.message(), session.login().name());
+                    if (Cluster != null) {
+                        Cluster.relayMessage(room.getName(), session.login().name(), message.message());
+                    }
+                    LOG.info(usid, "message received");
+                }
+                else {
+                    LOG.info(usid, "sending message denied");
+                    session.handler().addOutputMessage(new Message(
+                            MessageType.SERVER_ERROR,
+                            new ServerError("You are not authorized")
+                    ));
+                }
+            }
+            case CLIENT_HISTORY_REQUEST -> {
+                if (session.isAuthorised()) {
+                    LOG.info(usid, "requested history");
+                    ClientHistoryRequest request = (ClientHistoryRequest) msg.getMessage();
+                    Room room = getJoinedRoom(session, request.room());
+                    if (room == null) {
+                        session.handler().addOutputMessage(new Message(
+                                MessageType.SERVER_ERROR,
+                                new ServerError("You are not in this room")
+                        ));
+                        return;
+                    }
+                    session.handler().addOutputMessage(new Message(
+                            MessageType.SERVER_HISTORY_RESPONSE,
+                            new ServerHistory(room.read(request.before(), Math.min(request.limit(), HISTORY_PAGE_LIMIT)))
+                    ));
+                }
+                else {
+                    LOG.info(usid, "history access denied");
+                    session.handler().addOutputMessage(new Message(
+                            MessageType.SERVER_ERROR,
+                            new ServerError("You are not authorized")
+                    ));
+                }
+            }
+            case CLIENT_PRIVATE_MESSAGE -> {
+                if (session.isAuthorised()) {
+                    ClientPrivateMessage message = (ClientPrivateMessage) msg.getMessage();
+                    if (message.to() == null || message.to().isEmpty()) {
+                        session.handler().addOutputMessage(new Message(
+                                MessageType.SERVER_ERROR,
+                                new ServerError("no recipient")
+                        ));
+                        return;
+                    }
+                    if (!LIMITER.tryAcquire(session.sessionLimit(), session.userLimit())) {
+                        session.handler().addOutputMessage(new Message(
+                                MessageType.SERVER_ERROR,
+                                new ServerError("You are sending messages too fast")
+                        ));
+                        return;
+                    }
+                    ServerPrivateReceipt.Status status = Cluster != null && Cluster.forwardPrivate(session.login().name(), message)
+                            ? ServerPrivateReceipt.Status.DELIVERED
+                            : Post.send(session.login().name(), message);
+                    LOG.info(usid, "private message {}", status);
+                    session.handler().addOutputMessage(new Message(
+                            MessageType.SERVER_PRIVATE_RECEIPT,
+                            new ServerPrivateReceipt(message.to(), message.id(), status)
                     ));
-                    LOGGER.info("USID " + usid + ": message received");
                 }
                 else {
-                    LOGGER.info("USID " + usid + ": sending message denied");
+                    LOG.info(usid, "sending private message denied");
+                    session.handler().addOutputMessage(new Message(
+                            MessageType.SERVER_ERROR,
+                            new ServerError("You are not authorized")
+                    ));
+                }
+            }
+            case CLIENT_JOIN_ROOM -> {
+                if (session.isAuthorised()) {
+                    ClientRoom request = (ClientRoom) msg.getMessage();
+                    LOG.info(usid, "joining room {}", request.room());
+                    Room room = request.room() == null ? null : Rooms.get(request.room());
+                    if (room == null) {
+                        session.handler().addOutputMessage(new Message(
+                                MessageType.SERVER_ERROR,
+                                new ServerError("no such room")
+                        ));
+                    }
+                    else if (!session.rooms().add(room)) {
+                        session.handler().addOutputMessage(new Message(
+                                MessageType.SERVER_ERROR,
+                                new ServerError("You are already in this room")
+                        ));
+                    }
+                    else {
+                        room.join(session.handler(), session.login().name());
+                    }
+                }
+                else {
+                    LOG.info(usid, "joining room denied");
+                    session.handler().addOutputMessage(new Message(
+                            MessageType.SERVER_ERROR,
+                            new ServerError("You are not authorized")
+                    ));
+                }
+            }
+            case CLIENT_LEAVE_ROOM -> {
+                if (session.isAuthorised()) {
+                    ClientRoom request = (ClientRoom) msg.getMessage();
+                    LOG.info(usid, "leaving room {}", request.room());
+                    Room room = getJoinedRoom(session, request.room());
+                    if (room == null || !session.rooms().remove(room)) {
+                        session.handler().addOutputMessage(new Message(
+                                MessageType.SERVER_ERROR,
+                                new ServerError("You are not in this room")
+                        ));
+                    }
+                    else {
+                        room.leave(session.handler(), session.login().name());
+                    }
+                }
+                else {
+                    LOG.info(usid, "leaving room denied");
                     session.handler().addOutputMessage(new Message(
                             MessageType.SERVER_ERROR,
                             new ServerError("You are not authorized")
@@ -201,7 +644,7 @@ public class Server {
             }
             case CLIENT_LOGOUT -> {
                 if (session.isAuthorised()) {
-                    LOGGER.info("USID " + usid + ": user logout");
+                    LOG.info(usid, "user logout");
                     session.handler().addOutputMessage(new Message(
                             MessageType.SERVER_EMPTY_SUCCESS,
                             null
@@ -209,7 +652,7 @@ public class Server {
                     removeSession(usid);
                 }
                 else {
-                    LOGGER.info("USID " + usid + ": not authorized message attempting to logout");
+                    LOG.info(usid, "not authorized message attempting to logout");
                     session.handler().addOutputMessage(new Message(
                             MessageType.SERVER_ERROR,
                             new ServerError("You are not authorized")
@@ -218,7 +661,7 @@ public class Server {
             }
 
             default -> {
-                LOGGER.info("USID " + usid + ": unrecognized message");
+                LOG.info(usid, "unrecognized message");
                 SessionMap.get(usid).handler().addOutputMessage(new Message(
                         MessageType.SERVER_ERROR,
                         new ServerError("not implemented message type")
@@ -227,41 +670,274 @@ public class Server {
         }
     }
 
+    private void finishLogin(UUID usid, ClientLogin login, ClaimResult result) {
+        PendingLogins.remove(usid);
+        Session session = SessionMap.get(usid);
+        ServerListDelta added = result == ClaimResult.GRANTED && session != null ? Users.claim(usid, login) : null;
+        if (added == null) {
+            if (Cluster != null && result == ClaimResult.GRANTED) {
+                Cluster.release(login.name(), usid);
+            }
+            if (session == null) {
+                return;
+            }
+            LOG.info(usid, "username {} rejected: {}", login.name(), result);
+            session.handler().addOutputMessage(new Message(
+                    MessageType.SERVER_ERROR,
+                    new ServerError(result == ClaimResult.UNAVAILABLE
+                            ? "username registry is unavailable, try again later"
+                            : "this username already exists")
+            ));
+            return;
+        }
+        LOG.info(usid, "new user authorized {}, client {}", login.name(), login.client());
+        Session authorised = new Session(
+                true,
+                login,
+                session.handler(),
+                session.rooms(),
+                session.sessionLimit(),
+                LIMITER.acquireUserBucket(login.name())
+        );
+        if (!SessionMap.replace(usid, session, authorised)) {
+            broadcastListChange(MessageType.SERVER_LIST_ADDED, added);
+            broadcastListChange(MessageType.SERVER_LIST_REMOVED, Users.release(usid));
+            if (Cluster != null) {
+                Cluster.release(login.name(), usid);
+            }
+            return;
+        }
+        session.handler().addOutputMessage(new Message(
+                MessageType.SERVER_LOGIN_SUCCESS,
+                new ServerClientSessionID(usid)
+        ));
+        Authorised.add(session.handler());
+        Set<Capability> capabilities = Capability.parse(login.client());
+        if (capabilities.contains(Capability.LIST_DELTA)) {
+            ListSubscribers.add(session.handler());
+        }
+        session.handler().setHeartbeat(capabilities.contains(Capability.HEARTBEAT));
+        session.handler().setResync(capabilities.contains(Capability.RESYNC));
+        LOG.info(usid, "sending backlogs to new user");
+        session.rooms().add(DefaultRoom);
+        DefaultRoom.join(session.handler(), null);
+        if (capabilities.contains(Capability.PRIVATE_MESSAGES)) {
+            Post.connect(login.name(), session.handler());
+        }
+        else {
+            Post.connectLegacy(login.name(), session.handler());
+        }
+        LOG.info(usid, "broadcasting about new user to everyone");
+        broadcast(new Message(
+                MessageType.SERVER_USER_LOGIN,
+                new ServerUserName(login.name())
+        ));
+        broadcastListChange(MessageType.SERVER_LIST_ADDED, added);
+        if (Cluster != null) {
+            Cluster.announceLogin(usid, login);
+        }
+    }
+
     public void removeSession(UUID usid) {
-        LOGGER.info("removing session: " + usid);
-        if (SessionMap.containsKey(usid) && SessionMap.get(usid).isAuthorised()) {
-            ServerUserName userName = new ServerUserName(SessionMap.get(usid).login().name());
-            SessionMap.remove(usid);
+        LOG.info(usid, "removing session");
+        PendingLogins.remove(usid);
+        Session session = SessionMap.remove(usid);
+        if (session != null) {
+            Authorised.remove(session.handler());
+            ListSubscribers.remove(session.handler());
+            if (session.isAuthorised()) {
+                Post.disconnect(session.login().name(), session.handler());
+                LIMITER.releaseUserBucket(session.login().name(), session.userLimit());
+            }
+            for (Room room : session.rooms()) {
+                room.leave(session.handler(), null);
+            }
+        }
+        ServerListDelta removed = Users.release(usid);
+        if (removed != null) {
             broadcast(new Message(
                     MessageType.SERVER_USER_LOGOUT,
-                    userName
+                    new ServerUserName(removed.user().name())
             ));
+            broadcastListChange(MessageType.SERVER_LIST_REMOVED, removed);
+            if (Cluster != null) {
+                Cluster.announceLogout(usid);
+                Cluster.release(removed.user().name(), usid);
+            }
         }
-        else {
-            SessionMap.remove(usid);
+    }
+
+    @Override
+    public void onRemoteLogin(int node, UUID usid, ClientLogin login) {
+        ServerListDelta added = Users.claim(usid, login);
+        if (added == null) {
+            LOGGER.warning("node " + node + " user " + login.name() + " clashes with a known user");
+            return;
         }
+        broadcast(new Message(
+                MessageType.SERVER_USER_LOGIN,
+                new ServerUserName(login.name())
+        ));
+        broadcastListChange(MessageType.SERVER_LIST_ADDED, added);
     }
 
-    private void broadcast(Message message) {
+    @Override
+    public void onRemoteLogout(int node, UUID usid) {
+        ServerListDelta removed = Users.release(usid);
+        if (removed != null) {
+            broadcast(new Message(
+                    MessageType.SERVER_USER_LOGOUT,
+                    new ServerUserName(removed.user().name())
+            ));
+            broadcastListChange(MessageType.SERVER_LIST_REMOVED, removed);
+        }
+    }
+
+    @Override
+    public void onRemoteMessage(String room, String name, String text) {
+        Room target = room == null ? null : Rooms.get(room);
+        if (target != null) {
+            target.publish(text, name);
+        }
+    }
+
+    @Override
+    public void onRemotePrivate(String from, ClientPrivateMessage message) {
+        Post.send(from, message);
+    }
+
+    @Override
+    public Map<UUID, ClientLogin> getLocalUsers() {
+        Map<UUID, ClientLogin> users = new HashMap<>();
         synchronized (SessionMap) {
-            for (Session session : SessionMap.values()) {
-                session.handler().addOutputMessage(message);
+            for (Map.Entry<UUID, Session> entry : SessionMap.entrySet()) {
+                if (entry.getValue().isAuthorised()) {
+                    users.put(entry.getKey(), entry.getValue().login());
+                }
             }
         }
+        return users;
     }
 
-    private void backlog(ServerMessage message) {
-        synchronized (Backlog) {
-            while (Backlog.size() >= BACKLOG_COUNT) {
-                Backlog.removeFirst();
+    public List<SlowSession> getSlowSessions() {
+        List<SlowSession> sessions = new ArrayList<>();
+        synchronized (SessionMap) {
+            for (Map.Entry<UUID, Session> entry : SessionMap.entrySet()) {
+                ClientHandler handler = entry.getValue().handler();
+                if (handler.isSlow()) {
+                    sessions.add(new SlowSession(
+                            entry.getKey(),
+                            entry.getValue().isAuthorised() ? entry.getValue().login().name() : null,
+                            handler.getQueuedBytes(),
+                            handler.getDroppedMessages()
+                    ));
+                }
             }
-            Backlog.addLast(message);
         }
+        return sessions;
+    }
+
+    private String describeSlowSessions() {
+        StringBuilder out = new StringBuilder("# usid name queued_bytes dropped_messages\n");
+        for (SlowSession session : getSlowSessions()) {
+            out.append(session.usid()).append(' ')
+                    .append(session.name() == null ? "-" : session.name()).append(' ')
+                    .append(session.queuedBytes()).append(' ')
+                    .append(session.droppedMessages()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private void sendUserList(ClientHandler handler) {
+        EncodedUserList current = UserListFrame;
+        if (current == null || current.version() != Users.getVersion()) {
+            ServerList list = Users.snapshot();
+            try {
+                current = new EncodedUserList(list.version(), PARSER.encodeFrame(new Message(
+                        MessageType.SERVER_LIST_RESPONSE,
+                        list
+                )));
+            } catch (ParsingException e) {
+                LOGGER.info("user list parser exception: " + e.getMessage());
+                return;
+            }
+            UserListFrame = current;
+        }
+        handler.addOutputFrame(current.frame());
+        METRICS.recordOut(MessageType.SERVER_LIST_RESPONSE, 1);
+    }
+
+    private void broadcastListChange(MessageType type, ServerListDelta delta) {
+        if (delta != null) {
+            broadcast(new Message(type, delta), ListSubscribers);
+        }
+    }
+
+    private Room getJoinedRoom(Session session, String name) {
+        Room room = name == null ? DefaultRoom : Rooms.get(name);
+        return room != null && session.rooms().contains(room) ? room : null;
     }
 
-    private final Deque<ServerMessage> Backlog = new LinkedList<>();
+    private void broadcast(Message message) {
+        broadcast(message, Authorised);
+    }
+
+    private void broadcast(Message message, Set<ClientHandler> recipients) {
+        PooledBuffer frame;
+        try {
+            frame = PARSER.encodeFrame(message, POOL);
+        } catch (ParsingException e) {
+            LOGGER.info("broadcast parser exception: " + e.getMessage());
+            return;
+        }
+        try {
+            METRICS.recordOut(message.getType(), broadcast(frame, recipients));
+        }
+        finally {
+            frame.release();
+        }
+    }
+
+    private int broadcast(PooledBuffer frame, Set<ClientHandler> recipients) {
+        long started = System.nanoTime();
+        int delivered = 0;
+        for (ClientHandler handler : recipients) {
+            handler.addOutputFrame(frame);
+            ++delivered;
+        }
+        METRICS.recordFanOut(started, delivered);
+        return delivered;
+    }
+
+    private final int BACKLOG_CAPACITY;
+    private static final Pattern ROOM_NAME = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+    private final Path HistoryDirectory;
+    private final ScheduledExecutorService LogFlusher;
+    private final Map<String, Room> Rooms = new ConcurrentHashMap<>();
+    private final Room DefaultRoom;
+    private final PostOffice Post;
+    private final ClusterNode Cluster;
+    private final MetricsEndpoint MetricsHttp;
+    private final Set<UUID> PendingLogins = ConcurrentHashMap.newKeySet();
     private final Map<UUID, Session> SessionMap = Collections.synchronizedMap(new HashMap<>());
+    private final Set<ClientHandler> Authorised = ConcurrentHashMap.newKeySet();
+    private final Set<ClientHandler> ListSubscribers = ConcurrentHashMap.newKeySet();
+    private final UserRegistry Users = new UserRegistry();
+    private volatile EncodedUserList UserListFrame;
     private final AtomicBoolean IsRunning = new AtomicBoolean(false);
+    private EventLoop[] Loops;
+    private Thread[] LoopThreads;
+    private int NextLoop = 0;
+    private ExecutorService VirtualExecutor;
 }
 
-record Session(boolean isAuthorised, ClientLogin login, ClientHandler handler) {  }
+record Session(
+        boolean isAuthorised,
+        ClientLogin login,
+        ClientHandler handler,
+        Set<Room> rooms,
+        TokenBucket sessionLimit,
+        TokenBucket userLimit
+) {  }
+
+record EncodedUserList(long version, ByteBuffer frame) {  }
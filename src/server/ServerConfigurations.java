@@ -9,10 +9,79 @@ public class ServerConfigurations {
         return Fields.get(field);
     };
 
+    public static String getFieldValue(Field field, String defaultValue) {
+        String value = Fields.get(field);
+        return value == null ? defaultValue : value;
+    }
+
+    public static void override(String[] settings) {
+        for (String setting : settings) {
+            String[] pair = setting.split("\\s*=\\s*", 2);
+            if (pair.length < 2) {
+                throw new RuntimeException("bad setting " + setting + ", expected key=value");
+            }
+            Fields.put(parseField(pair[0]), pair[1]);
+        }
+    }
+
+    public static Map<Field, String> snapshot() {
+        Map<Field, String> settings = new EnumMap<>(Field.class);
+        synchronized (Fields) {
+            settings.putAll(Fields);
+        }
+        return settings;
+    }
+
+    public static void restore(Map<Field, String> settings) {
+        synchronized (Fields) {
+            Fields.clear();
+            Fields.putAll(settings);
+        }
+    }
+
     public enum Field {
         PORT,
         LOGGING,
-        XML
+        XML,
+        CODEC,
+        EXECUTION,
+        IO_THREADS,
+        FLUSH_BYTES,
+        COALESCE_BYTES,
+        MAX_FRAME_BYTES,
+        LOG_DIR,
+        LOG_SEGMENT_BYTES,
+        LOG_RETENTION_BYTES,
+        LOG_RETENTION_MS,
+        LOG_FLUSH_MS,
+        LOG_INDEX_INTERVAL,
+        BACKLOG_CAPACITY,
+        ROOMS,
+        MAILBOX_CAPACITY,
+        MAILBOX_MEMORY,
+        MAILBOX_COUNT,
+        MAILBOX_DISK_BYTES,
+        NODE_ID,
+        CLUSTER_NODES,
+        CLUSTER_CLAIM_TIMEOUT_MS,
+        CLUSTER_QUEUE_CAPACITY,
+        OUTPUT_HIGH_WATERMARK,
+        OUTPUT_LOW_WATERMARK,
+        SLOW_CONSUMER_POLICY,
+        IDLE_PING_MS,
+        IDLE_TIMEOUT_MS,
+        SESSION_MESSAGE_RATE,
+        SESSION_MESSAGE_BURST,
+        USER_MESSAGE_RATE,
+        USER_MESSAGE_BURST,
+        DISPATCH_THREADS,
+        DISPATCH_QUEUE_CAPACITY,
+        METRICS_ADDRESS,
+        METRICS_PORT,
+        LOGGING_LEVEL,
+        LOGGING_FILE,
+        LOGGING_BUFFER_SIZE,
+        LOGGING_SESSION_SAMPLE
     }
 
     private static Field parseField(String field) {
@@ -20,6 +89,45 @@ public class ServerConfigurations {
             case ("port") -> { return Field.PORT; }
             case ("logging") -> { return Field.LOGGING; }
             case ("XML") -> { return Field.XML; }
+            case ("codec") -> { return Field.CODEC; }
+            case ("execution") -> { return Field.EXECUTION; }
+            case ("io_threads") -> { return Field.IO_THREADS; }
+            case ("flush_bytes") -> { return Field.FLUSH_BYTES; }
+            case ("coalesce_bytes") -> { return Field.COALESCE_BYTES; }
+            case ("max_frame_bytes") -> { return Field.MAX_FRAME_BYTES; }
+            case ("log_dir") -> { return Field.LOG_DIR; }
+            case ("log_segment_bytes") -> { return Field.LOG_SEGMENT_BYTES; }
+            case ("log_retention_bytes") -> { return Field.LOG_RETENTION_BYTES; }
+            case ("log_retention_ms") -> { return Field.LOG_RETENTION_MS; }
+            case ("log_flush_ms") -> { return Field.LOG_FLUSH_MS; }
+            case ("log_index_interval") -> { return Field.LOG_INDEX_INTERVAL; }
+            case ("backlog_capacity") -> { return Field.BACKLOG_CAPACITY; }
+            case ("rooms") -> { return Field.ROOMS; }
+            case ("mailbox_capacity") -> { return Field.MAILBOX_CAPACITY; }
+            case ("mailbox_memory") -> { return Field.MAILBOX_MEMORY; }
+            case ("mailbox_count") -> { return Field.MAILBOX_COUNT; }
+            case ("mailbox_disk_bytes") -> { return Field.MAILBOX_DISK_BYTES; }
+            case ("node_id") -> { return Field.NODE_ID; }
+            case ("cluster_nodes") -> { return Field.CLUSTER_NODES; }
+            case ("cluster_claim_timeout_ms") -> { return Field.CLUSTER_CLAIM_TIMEOUT_MS; }
+            case ("cluster_queue_capacity") -> { return Field.CLUSTER_QUEUE_CAPACITY; }
+            case ("output_high_watermark") -> { return Field.OUTPUT_HIGH_WATERMARK; }
+            case ("output_low_watermark") -> { return Field.OUTPUT_LOW_WATERMARK; }
+            case ("slow_consumer_policy") -> { return Field.SLOW_CONSUMER_POLICY; }
+            case ("idle_ping_ms") -> { return Field.IDLE_PING_MS; }
+            case ("idle_timeout_ms") -> { return Field.IDLE_TIMEOUT_MS; }
+            case ("session_message_rate") -> { return Field.SESSION_MESSAGE_RATE; }
+            case ("session_message_burst") -> { return Field.SESSION_MESSAGE_BURST; }
+            case ("user_message_rate") -> { return Field.USER_MESSAGE_RATE; }
+            case ("user_message_burst") -> { return Field.USER_MESSAGE_BURST; }
+            case ("dispatch_threads") -> { return Field.DISPATCH_THREADS; }
+            case ("dispatch_queue_capacity") -> { return Field.DISPATCH_QUEUE_CAPACITY; }
+            case ("metrics_address") -> { return Field.METRICS_ADDRESS; }
+            case ("metrics_port") -> { return Field.METRICS_PORT; }
+            case ("logging_level") -> { return Field.LOGGING_LEVEL; }
+            case ("logging_file") -> { return Field.LOGGING_FILE; }
+            case ("logging_buffer_size") -> { return Field.LOGGING_BUFFER_SIZE; }
+            case ("logging_session_sample") -> { return Field.LOGGING_SESSION_SAMPLE; }
 
             default -> throw new RuntimeException("Bad configuration file: " + ConfigFile);
         }
@@ -0,0 +1,99 @@
+package server;
+
+import messages.MessageType;
+import server.metrics.Histogram;
+import server.metrics.MetricsRegistry;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class ServerMetrics {
+    ServerMetrics(MetricsRegistry registry) {
+        Registry = registry;
+        MessageType[] types = MessageType.values();
+        MessagesIn = new LongAdder[types.length];
+        MessagesOut = new LongAdder[types.length];
+        for (MessageType type : types) {
+            String labels = "type=\"" + type.name().toLowerCase() + "\"";
+            if (type.name().startsWith("CLIENT_")) {
+                MessagesIn[type.ordinal()] = registry.counter("chat_messages_in_total", labels, "Messages received from clients");
+            }
+            else {
+                MessagesOut[type.ordinal()] = registry.counter("chat_messages_out_total", labels, "Messages queued to clients");
+            }
+        }
+        BytesIn = registry.counter("chat_bytes_in_total", "Frame bytes received from clients");
+        Connections = registry.counter("chat_connections_total", "Accepted client connections");
+        FanOutTime = registry.histogram("chat_fanout_microseconds", "Time spent queuing one frame to every recipient");
+        FanOutSize = registry.histogram("chat_fanout_recipients", "Recipients of one broadcast frame");
+    }
+
+    public MetricsRegistry getRegistry() {
+        return Registry;
+    }
+
+    void bind(Server server) {
+        Registry.gauge("chat_sessions", "Open client connections", server::getSessionCount);
+        Registry.gauge("chat_authorised_sessions", "Logged in client connections", server::getAuthorisedCount);
+        Registry.gauge("chat_output_queued_bytes", "Bytes waiting in all output queues", () -> server.getOutputQueueStats()[0]);
+        Registry.gauge("chat_output_queued_bytes_max", "Bytes waiting in the longest output queue", () -> server.getOutputQueueStats()[1]);
+        TransportStats stats = server.STATS;
+        Registry.counter("chat_bytes_out_total", "Bytes written to clients", stats::getWrittenBytes);
+        Registry.counter("chat_write_calls_total", "Socket write calls", stats::getWriteCalls);
+        Registry.counter("chat_dropped_messages_total", "Messages shed from slow consumers", stats::getDroppedMessages);
+        Registry.gauge("chat_slow_sessions", "Sessions above the output high watermark right now", () -> server.getSlowSessions().size());
+        Registry.counter("chat_slow_consumers_total", "Sessions that crossed the output high watermark", stats::getSlowConsumers);
+        Registry.counter("chat_evictions_total", "Sessions disconnected as slow consumers", stats::getEvictions);
+        Registry.gauge("chat_buffer_pool_leased", "Pooled buffers currently leased", server.POOL::getLeased);
+        Registry.counter("chat_throttled_session_total", "Messages rejected by the session rate limit", server.LIMITER::getThrottledBySession);
+        Registry.counter("chat_throttled_user_total", "Messages rejected by the user rate limit", server.LIMITER::getThrottledByUser);
+        if (server.IDLE_WHEEL != null) {
+            Registry.gauge("chat_idle_watched", "Sessions tracked by the idle wheel", server.IDLE_WHEEL::getWatchedCount);
+            Registry.counter("chat_idle_reaped_total", "Sessions closed for inactivity", server.IDLE_WHEEL::getReaped);
+        }
+        Dispatcher dispatcher = server.DISPATCHER;
+        if (dispatcher != null) {
+            int[] shards = dispatcher.getQueueDepths();
+            for (int i = 0; i < shards.length; ++i) {
+                int shard = i;
+                Registry.gauge("chat_dispatch_queue_depth", "shard=\"" + i + "\"", "Messages waiting in a dispatch shard",
+                        () -> dispatcher.getQueueDepths()[shard]);
+            }
+            Registry.counter("chat_dispatch_stalls_total", "Reads paused on a full dispatch shard", dispatcher::getStalls);
+            Registry.histogram("chat_dispatch_depth", "", "Dispatch shard depth after a submission", dispatcher.getQueueDepth());
+            Registry.histogram("chat_dispatch_wait_microseconds", "", "Time a message waited in a dispatch shard", dispatcher.getQueueLatency());
+            Registry.histogram("chat_dispatch_handle_microseconds", "", "Time spent handling one message", dispatcher.getHandleLatency());
+        }
+    }
+
+    void recordIn(MessageType type, int bytes) {
+        LongAdder counter = MessagesIn[type.ordinal()];
+        if (counter != null) {
+            counter.increment();
+        }
+        BytesIn.add(bytes);
+    }
+
+    void recordOut(MessageType type, int count) {
+        LongAdder counter = MessagesOut[type.ordinal()];
+        if (counter != null && count > 0) {
+            counter.add(count);
+        }
+    }
+
+    void recordConnection() {
+        Connections.increment();
+    }
+
+    void recordFanOut(long startedNanos, int recipients) {
+        FanOutTime.record((System.nanoTime() - startedNanos) / 1000);
+        FanOutSize.record(recipients);
+    }
+
+    private final MetricsRegistry Registry;
+    private final LongAdder[] MessagesIn;
+    private final LongAdder[] MessagesOut;
+    private final LongAdder BytesIn;
+    private final LongAdder Connections;
+    private final Histogram FanOutTime;
+    private final Histogram FanOutSize;
+}
@@ -0,0 +1,17 @@
+package server;
+
+public enum SlowConsumerPolicy {
+    DROP_OLDEST,
+    RESYNC,
+    DISCONNECT;
+
+    public static SlowConsumerPolicy parse(String value) {
+        switch (value) {
+            case ("drop_oldest") -> { return DROP_OLDEST; }
+            case ("resync") -> { return RESYNC; }
+            case ("disconnect") -> { return DISCONNECT; }
+
+            default -> throw new RuntimeException("unknown slow consumer policy: " + value);
+        }
+    }
+}
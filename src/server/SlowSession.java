@@ -0,0 +1,5 @@
+package server;
+
+import java.util.UUID;
+
+public record SlowSession(UUID usid, String name, long queuedBytes, long droppedMessages) {  }
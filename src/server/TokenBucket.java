@@ -0,0 +1,48 @@
+package server;
+
+class TokenBucket {
+    TokenBucket(double ratePerSecond, int burst) {
+        this(ratePerSecond, burst, System.nanoTime());
+    }
+
+    TokenBucket(double ratePerSecond, int burst, long now) {
+        INTERVAL = Math.max(1, Math.round(1_000_000_000 / ratePerSecond));
+        CAPACITY = INTERVAL * Math.max(1, burst);
+        Available = CAPACITY;
+        LastRefill = now;
+    }
+
+    synchronized boolean tryTake(long now) {
+        refill(now);
+        if (Available < INTERVAL) {
+            return false;
+        }
+        Available -= INTERVAL;
+        return true;
+    }
+
+    synchronized void giveBack() {
+        Available = Math.min(CAPACITY, Available + INTERVAL);
+    }
+
+    synchronized boolean isFull(long now) {
+        return Available + Math.max(0, now - LastRefill) >= CAPACITY;
+    }
+
+    long getRefillNanos() {
+        return CAPACITY;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - LastRefill;
+        if (elapsed > 0) {
+            Available = Math.min(CAPACITY, Available + elapsed);
+            LastRefill = now;
+        }
+    }
+
+    private final long INTERVAL;
+    private final long CAPACITY;
+    private long Available;
+    private long LastRefill;
+}
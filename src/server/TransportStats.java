@@ -0,0 +1,82 @@
+package server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class TransportStats {
+    void recordWrite(long bytes, int messages) {
+        WriteCalls.increment();
+        WrittenBytes.add(bytes);
+        DeliveredMessages.add(messages);
+    }
+
+    void recordSlowConsumer() {
+        SlowConsumers.increment();
+    }
+
+    void recordDrop(long bytes, int messages) {
+        DroppedBytes.add(bytes);
+        DroppedMessages.add(messages);
+    }
+
+    void recordResync() {
+        Resyncs.increment();
+    }
+
+    void recordEviction() {
+        Evictions.increment();
+    }
+
+    public long getWriteCalls() {
+        return WriteCalls.sum();
+    }
+
+    public long getWrittenBytes() {
+        return WrittenBytes.sum();
+    }
+
+    public long getDeliveredMessages() {
+        return DeliveredMessages.sum();
+    }
+
+    public long getSlowConsumers() {
+        return SlowConsumers.sum();
+    }
+
+    public long getDroppedBytes() {
+        return DroppedBytes.sum();
+    }
+
+    public long getDroppedMessages() {
+        return DroppedMessages.sum();
+    }
+
+    public long getResyncs() {
+        return Resyncs.sum();
+    }
+
+    public long getEvictions() {
+        return Evictions.sum();
+    }
+
+    public double getWriteCallsPerMessage() {
+        long messages = getDeliveredMessages();
+        return messages == 0 ? 0 : (double) getWriteCalls() / messages;
+    }
+
+    @Override
+    public String toString() {
+        return "writes=" + getWriteCalls() + " bytes=" + getWrittenBytes() + " messages=" + getDeliveredMessages()
+                + String.format(" writes/message=%.3f", getWriteCallsPerMessage())
+                + " slow=" + getSlowConsumers() + " dropped=" + getDroppedMessages() + " droppedBytes=" + getDroppedBytes()
+                + " resyncs=" + getResyncs() + " evicted=" + getEvictions();
+    }
+
+    private final LongAdder WriteCalls = new LongAdder();
+    private final LongAdder WrittenBytes = new LongAdder();
+    private final LongAdder DeliveredMessages = new LongAdder();
+    private final LongAdder SlowConsumers = new LongAdder();
+    private final LongAdder DroppedBytes = new LongAdder();
+    private final LongAdder DroppedMessages = new LongAdder();
+    private final LongAdder Resyncs = new LongAdder();
+    private final LongAdder Evictions = new LongAdder();
+}
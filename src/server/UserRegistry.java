@@ -0,0 +1,55 @@
+package server;
+
+import messages.ClientLogin;
+import messages.ServerList;
+import messages.ServerListDelta;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class UserRegistry {
+    public synchronized ServerListDelta claim(UUID usid, ClientLogin login) {
+        if (Names.putIfAbsent(login.name(), usid) != null) {
+            return null;
+        }
+        Logins.put(usid, login);
+        return new ServerListDelta(login, Version.incrementAndGet());
+    }
+
+    public synchronized ServerListDelta release(UUID usid) {
+        ClientLogin login = Logins.remove(usid);
+        if (login == null) {
+            return null;
+        }
+        Names.remove(login.name(), usid);
+        return new ServerListDelta(login, Version.incrementAndGet());
+    }
+
+    public long getVersion() {
+        return Version.get();
+    }
+
+    public ServerList snapshot() {
+        ServerList current = Current;
+        if (current != null && current.version() == Version.get()) {
+            return current;
+        }
+        synchronized (this) {
+            current = Current;
+            long version = Version.get();
+            if (current == null || current.version() != version) {
+                current = new ServerList(new ArrayList<>(Logins.values()), version);
+                Current = current;
+            }
+            return current;
+        }
+    }
+
+    private final Map<String, UUID> Names = new ConcurrentHashMap<>();
+    private final Map<UUID, ClientLogin> Logins = new ConcurrentHashMap<>();
+    private final AtomicLong Version = new AtomicLong(0);
+    private volatile ServerList Current;
+}
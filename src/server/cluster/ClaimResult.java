@@ -0,0 +1,7 @@
+package server.cluster;
+
+public enum ClaimResult {
+    GRANTED,
+    TAKEN,
+    UNAVAILABLE
+}
@@ -0,0 +1,19 @@
+package server.cluster;
+
+import messages.ClientLogin;
+import messages.ClientPrivateMessage;
+
+import java.util.Map;
+import java.util.UUID;
+
+public interface ClusterListener {
+    void onRemoteLogin(int node, UUID usid, ClientLogin login);
+
+    void onRemoteLogout(int node, UUID usid);
+
+    void onRemoteMessage(String room, String name, String text);
+
+    void onRemotePrivate(String from, ClientPrivateMessage message);
+
+    Map<UUID, ClientLogin> getLocalUsers();
+}
@@ -0,0 +1,552 @@
+package server.cluster;
+
+import messages.ClientLogin;
+import messages.ClientPrivateMessage;
+import server.Server;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ClusterNode implements AutoCloseable {
+    private static final byte HELLO = 1;
+    private static final byte CLAIM = 2;
+    private static final byte CLAIM_RESULT = 3;
+    private static final byte RELEASE = 4;
+    private static final byte RECLAIM = 5;
+    private static final byte USER_JOINED = 6;
+    private static final byte USER_LEFT = 7;
+    private static final byte MESSAGE = 8;
+    private static final byte PRIVATE = 9;
+    private static final byte SYNC = 10;
+
+    public ClusterNode(int nodeId, List<InetSocketAddress> nodes, long claimTimeoutMillis, int queueCapacity, ClusterListener listener) {
+        if (nodeId < 0 || nodeId >= nodes.size()) {
+            throw new IllegalArgumentException("node id " + nodeId + " is not in the cluster of " + nodes.size());
+        }
+        NODE_ID = nodeId;
+        Nodes = List.copyOf(nodes);
+        CLAIM_TIMEOUT = claimTimeoutMillis;
+        Listener = listener;
+        Links = new PeerLink[nodes.size()];
+        Inbound = new Socket[nodes.size()];
+        Incarnations = new long[nodes.size()];
+        for (int i = 0; i < nodes.size(); ++i) {
+            if (i != nodeId) {
+                Links[i] = new PeerLink(this, i, nodes.get(i), queueCapacity);
+            }
+        }
+    }
+
+    public static List<InetSocketAddress> parseNodes(String nodes) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String node : nodes.split("\\s*,\\s*")) {
+            int colon = node.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("cluster node must be host:port, got " + node);
+            }
+            addresses.add(new InetSocketAddress(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    public void start() throws IOException {
+        Acceptor = new ServerSocket();
+        Acceptor.setReuseAddress(true);
+        Acceptor.bind(Nodes.get(NODE_ID));
+        Thread acceptor = new Thread(this::acceptLoop, "cluster-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        for (PeerLink link : Links) {
+            if (link != null) {
+                link.start();
+            }
+        }
+        Server.LOGGER.info("cluster node " + NODE_ID + " of " + Nodes.size() + " listening on " + Nodes.get(NODE_ID));
+    }
+
+    public int getNodeId() {
+        return NODE_ID;
+    }
+
+    InetSocketAddress getAddress() {
+        return Nodes.get(NODE_ID);
+    }
+
+    public int ownerOf(String name) {
+        return Math.floorMod(name.hashCode(), Nodes.size());
+    }
+
+    int liveOwnerOf(String name) {
+        int owner = ownerOf(name);
+        for (int i = 0; i < Nodes.size(); ++i) {
+            int node = (owner + i) % Nodes.size();
+            if (isLive(node)) {
+                return node;
+            }
+        }
+        return NODE_ID;
+    }
+
+    boolean isLive(int node) {
+        if (node == NODE_ID) {
+            return true;
+        }
+        if (!Links[node].isConnected()) {
+            return false;
+        }
+        synchronized (Inbound) {
+            return Inbound[node] != null;
+        }
+    }
+
+    public CompletableFuture<ClaimResult> claim(String name, UUID usid) {
+        int owner = liveOwnerOf(name);
+        if (owner == NODE_ID) {
+            ClaimResult result = grant(name, new Claim(NODE_ID, usid));
+            if (result == ClaimResult.GRANTED) {
+                Holders.put(name, new Holder(NODE_ID, usid));
+            }
+            return CompletableFuture.completedFuture(result);
+        }
+        long request = NextRequest.incrementAndGet();
+        CompletableFuture<ClaimResult> result = new CompletableFuture<>();
+        PendingClaims.put(request, result);
+        if (!Links[owner].send(encode(CLAIM, out -> {
+            out.writeLong(request);
+            writeString(out, name);
+            writeUUID(out, usid);
+        }))) {
+            PendingClaims.remove(request);
+            return CompletableFuture.completedFuture(ClaimResult.UNAVAILABLE);
+        }
+        return result.completeOnTimeout(ClaimResult.UNAVAILABLE, CLAIM_TIMEOUT, TimeUnit.MILLISECONDS)
+                .whenComplete((granted, e) -> {
+                    PendingClaims.remove(request);
+                    if (granted == ClaimResult.GRANTED) {
+                        Holders.put(name, new Holder(owner, usid));
+                    }
+                    else if (granted == ClaimResult.UNAVAILABLE) {
+                        releaseAt(owner, name, usid);
+                    }
+                });
+    }
+
+    public void release(String name, UUID usid) {
+        int owner = ownerOf(name);
+        releaseAt(owner, name, usid);
+        Holder holder = Holders.get(name);
+        if (holder != null && holder.usid().equals(usid) && Holders.remove(name, holder) && holder.node() != owner) {
+            releaseAt(holder.node(), name, usid);
+        }
+    }
+
+    private void releaseAt(int node, String name, UUID usid) {
+        if (node == NODE_ID) {
+            Claims.remove(name, new Claim(NODE_ID, usid));
+        }
+        else {
+            Links[node].send(encode(RELEASE, out -> {
+                writeString(out, name);
+                writeUUID(out, usid);
+            }));
+        }
+    }
+
+    public void announceLogin(UUID usid, ClientLogin login) {
+        sendAll(userJoinedOp(usid, login));
+    }
+
+    public void announceLogout(UUID usid) {
+        sendAll(encode(USER_LEFT, out -> writeUUID(out, usid)));
+    }
+
+    public void relayMessage(String room, String name, String text) {
+        sendAll(encode(MESSAGE, out -> {
+            writeString(out, room);
+            writeString(out, name);
+            writeString(out, text);
+        }));
+    }
+
+    public boolean forwardPrivate(String from, ClientPrivateMessage message) {
+        Integer node = RemoteNames.get(message.to());
+        if (node == null) {
+            return false;
+        }
+        return Links[node].send(encode(PRIVATE, out -> {
+            writeString(out, from);
+            writeString(out, message.to());
+            writeString(out, message.message());
+            out.writeLong(message.id());
+        }));
+    }
+
+    @Override
+    public void close() {
+        IsClosed = true;
+        for (PeerLink link : Links) {
+            if (link != null) {
+                link.close();
+            }
+        }
+        try {
+            if (Acceptor != null) {
+                Acceptor.close();
+            }
+        }
+        catch (IOException e) {
+            Server.LOGGER.info("ignored exception on closing cluster acceptor");
+        }
+        synchronized (Inbound) {
+            for (Socket socket : Inbound) {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    byte[] helloOp() {
+        return encode(HELLO, out -> {
+            out.writeInt(NODE_ID);
+            out.writeLong(INCARNATION);
+        });
+    }
+
+    void onLinkUp(int peer) {
+        PeerLink link = Links[peer];
+        for (Map.Entry<UUID, ClientLogin> user : Listener.getLocalUsers().entrySet()) {
+            String name = user.getValue().name();
+            Holder holder = Holders.get(name);
+            if (ownerOf(name) == peer || holder != null && holder.node() == peer && holder.usid().equals(user.getKey())) {
+                link.send(encode(RECLAIM, out -> {
+                    writeString(out, name);
+                    writeUUID(out, user.getKey());
+                }));
+            }
+            link.send(userJoinedOp(user.getKey(), user.getValue()));
+        }
+        link.send(encode(SYNC, out -> {  }));
+    }
+
+    private void acceptLoop() {
+        while (!IsClosed) {
+            Socket socket;
+            try {
+                socket = Acceptor.accept();
+            }
+            catch (IOException e) {
+                if (!IsClosed) {
+                    Server.LOGGER.info("cluster acceptor failed: " + e.getMessage());
+                }
+                return;
+            }
+            Thread reader = new Thread(() -> readLoop(socket), "cluster-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        int peer = -1;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            if (in.readByte() != HELLO) {
+                throw new IOException("peer did not introduce itself");
+            }
+            peer = in.readInt();
+            long incarnation = in.readLong();
+            if (peer < 0 || peer >= Nodes.size() || peer == NODE_ID) {
+                throw new IOException("unknown peer node " + peer);
+            }
+            if (!socket.getInetAddress().equals(Nodes.get(peer).getAddress())) {
+                throw new IOException("node " + peer + " must connect from " + Nodes.get(peer).getAddress() + ", not " + socket.getInetAddress());
+            }
+            boolean restarted;
+            synchronized (Inbound) {
+                closeQuietly(Inbound[peer]);
+                Inbound[peer] = socket;
+                restarted = Incarnations[peer] != 0 && Incarnations[peer] != incarnation;
+                Incarnations[peer] = incarnation;
+                markStale(peer);
+            }
+            if (restarted) {
+                Links[peer].reconnect();
+            }
+            Server.LOGGER.info("cluster node " + peer + " connected");
+            while (!IsClosed) {
+                dispatch(peer, in);
+            }
+        }
+        catch (IOException e) {
+            if (!IsClosed) {
+                Server.LOGGER.info("cluster node " + peer + " disconnected: " + e.getMessage());
+            }
+        }
+        finally {
+            closeQuietly(socket);
+            boolean current = false;
+            if (peer >= 0) {
+                synchronized (Inbound) {
+                    if (Inbound[peer] == socket) {
+                        Inbound[peer] = null;
+                        current = true;
+                    }
+                }
+            }
+            if (current && !IsClosed) {
+                onPeerDown(peer);
+            }
+        }
+    }
+
+    private void dispatch(int peer, DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        switch (op) {
+            case CLAIM -> {
+                long request = in.readLong();
+                String name = readString(in);
+                UUID usid = readUUID(in);
+                ClaimResult result = liveOwnerOf(name) == NODE_ID
+                        ? grant(name, new Claim(peer, usid))
+                        : ClaimResult.UNAVAILABLE;
+                if (result == ClaimResult.GRANTED) {
+                    confirmClaim(peer, name);
+                }
+                Links[peer].send(encode(CLAIM_RESULT, out -> {
+                    out.writeLong(request);
+                    out.writeByte(result.ordinal());
+                }));
+            }
+            case CLAIM_RESULT -> {
+                long request = in.readLong();
+                int result = in.readByte();
+                CompletableFuture<ClaimResult> pending = PendingClaims.remove(request);
+                if (pending != null) {
+                    pending.complete(RESULTS[result]);
+                }
+            }
+            case RELEASE -> {
+                String name = readString(in);
+                Claims.remove(name, new Claim(peer, readUUID(in)));
+            }
+            case RECLAIM -> {
+                String name = readString(in);
+                Claim claim = new Claim(peer, readUUID(in));
+                Claim existing = Claims.putIfAbsent(name, claim);
+                if (existing != null && existing.node() == peer) {
+                    Claims.replace(name, existing, claim);
+                }
+                else if (existing != null) {
+                    Server.LOGGER.warning("username " + name + " is claimed by nodes " + existing.node() + " and " + peer);
+                }
+                confirmClaim(peer, name);
+            }
+            case USER_JOINED -> {
+                UUID usid = readUUID(in);
+                ClientLogin login = new ClientLogin(readString(in), readString(in));
+                if (RemoteUsers.putIfAbsent(usid, new RemoteUser(peer, login.name())) == null) {
+                    RemoteNames.put(login.name(), peer);
+                    Listener.onRemoteLogin(peer, usid, login);
+                }
+                Set<UUID> stale = StaleUsers.get(peer);
+                if (stale != null) {
+                    stale.remove(usid);
+                }
+            }
+            case USER_LEFT -> {
+                UUID usid = readUUID(in);
+                removeRemoteUser(usid);
+            }
+            case MESSAGE -> {
+                String room = readString(in);
+                String name = readString(in);
+                Listener.onRemoteMessage(room, name, readString(in));
+            }
+            case PRIVATE -> {
+                String from = readString(in);
+                String to = readString(in);
+                String text = readString(in);
+                Listener.onRemotePrivate(from, new ClientPrivateMessage(to, text, in.readLong(), null));
+            }
+            case SYNC -> dropStale(peer);
+            default -> throw new IOException("unknown cluster operation " + op);
+        }
+    }
+
+    private void onPeerDown(int peer) {
+        Server.LOGGER.info("cluster node " + peer + " is down, dropping its users and claims");
+        StaleClaims.remove(peer);
+        StaleUsers.remove(peer);
+        Claims.values().removeIf(claim -> claim.node() == peer);
+        for (Map.Entry<UUID, RemoteUser> user : RemoteUsers.entrySet()) {
+            if (user.getValue().node() == peer) {
+                removeRemoteUser(user.getKey());
+            }
+        }
+    }
+
+    private void markStale(int peer) {
+        Set<String> claims = ConcurrentHashMap.newKeySet();
+        Claims.forEach((name, claim) -> {
+            if (claim.node() == peer) {
+                claims.add(name);
+            }
+        });
+        Set<UUID> users = ConcurrentHashMap.newKeySet();
+        RemoteUsers.forEach((usid, user) -> {
+            if (user.node() == peer) {
+                users.add(usid);
+            }
+        });
+        StaleClaims.put(peer, claims);
+        StaleUsers.put(peer, users);
+    }
+
+    private void confirmClaim(int peer, String name) {
+        Set<String> stale = StaleClaims.get(peer);
+        if (stale != null) {
+            stale.remove(name);
+        }
+    }
+
+    private void dropStale(int peer) {
+        Set<String> claims = StaleClaims.remove(peer);
+        Set<UUID> users = StaleUsers.remove(peer);
+        int dropped = 0;
+        for (String name : claims == null ? Set.<String>of() : claims) {
+            if (Claims.computeIfPresent(name, (key, claim) -> claim.node() == peer ? null : claim) == null) {
+                ++dropped;
+            }
+        }
+        for (UUID usid : users == null ? Set.<UUID>of() : users) {
+            RemoteUser user = RemoteUsers.get(usid);
+            if (user != null && user.node() == peer) {
+                removeRemoteUser(usid);
+                ++dropped;
+            }
+        }
+        if (dropped > 0) {
+            Server.LOGGER.info("cluster node " + peer + " resynchronized, dropped " + dropped + " stale claims and users");
+        }
+    }
+
+    private void removeRemoteUser(UUID usid) {
+        RemoteUser user = RemoteUsers.remove(usid);
+        if (user != null) {
+            RemoteNames.remove(user.name(), user.node());
+            Listener.onRemoteLogout(user.node(), usid);
+        }
+    }
+
+    private ClaimResult grant(String name, Claim claim) {
+        Claim existing = Claims.putIfAbsent(name, claim);
+        return existing == null || existing.equals(claim) ? ClaimResult.GRANTED : ClaimResult.TAKEN;
+    }
+
+    private byte[] userJoinedOp(UUID usid, ClientLogin login) {
+        return encode(USER_JOINED, out -> {
+            writeUUID(out, usid);
+            writeString(out, login.name());
+            writeString(out, login.client());
+        });
+    }
+
+    private void sendAll(byte[] op) {
+        for (PeerLink link : Links) {
+            if (link != null) {
+                link.send(op);
+            }
+        }
+    }
+
+    private static byte[] encode(byte op, OpWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(op);
+            writer.write(out);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeUUID(DataOutputStream out, UUID usid) throws IOException {
+        out.writeLong(usid.getMostSignificantBits());
+        out.writeLong(usid.getLeastSignificantBits());
+    }
+
+    private static UUID readUUID(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    private static void closeQuietly(Socket socket) {
+        if (socket == null) {
+            return;
+        }
+        try {
+            socket.close();
+        }
+        catch (IOException e) {
+            Server.LOGGER.info("ignored exception on closing cluster socket");
+        }
+    }
+
+    private interface OpWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private record Claim(int node, UUID usid) {  }
+
+    private record RemoteUser(int node, String name) {  }
+
+    private record Holder(int node, UUID usid) {  }
+
+    private static final ClaimResult[] RESULTS = ClaimResult.values();
+    private static final int MAX_STRING_BYTES = 16777216;
+    private final int NODE_ID;
+    private final List<InetSocketAddress> Nodes;
+    private final long CLAIM_TIMEOUT;
+    private final ClusterListener Listener;
+    private final PeerLink[] Links;
+    private final Socket[] Inbound;
+    private final long[] Incarnations;
+    private final long INCARNATION = new SecureRandom().nextLong() | 1;
+    private ServerSocket Acceptor;
+    private volatile boolean IsClosed = false;
+    private final AtomicLong NextRequest = new AtomicLong(0);
+    private final Map<Long, CompletableFuture<ClaimResult>> PendingClaims = new ConcurrentHashMap<>();
+    private final Map<String, Claim> Claims = new ConcurrentHashMap<>();
+    private final Map<String, Holder> Holders = new ConcurrentHashMap<>();
+    private final Map<UUID, RemoteUser> RemoteUsers = new ConcurrentHashMap<>();
+    private final Map<String, Integer> RemoteNames = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<String>> StaleClaims = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<UUID>> StaleUsers = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,125 @@
+package server.cluster;
+
+import server.Server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+class PeerLink implements Runnable {
+    PeerLink(ClusterNode node, int peer, InetSocketAddress address, int capacity) {
+        Node = node;
+        PEER = peer;
+        Address = address;
+        Queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    void start() {
+        Worker = new Thread(this, "cluster-link-" + PEER);
+        Worker.setDaemon(true);
+        Worker.start();
+    }
+
+    boolean send(byte[] op) {
+        if (!IsConnected) {
+            return false;
+        }
+        if (!Queue.offer(op)) {
+            Server.LOGGER.info("cluster link to node " + PEER + " is congested, resynchronizing");
+            reconnect();
+            return false;
+        }
+        return true;
+    }
+
+    boolean isConnected() {
+        return IsConnected;
+    }
+
+    @Override
+    public void run() {
+        while (!IsClosed) {
+            try (Socket socket = new Socket()) {
+                CurrentSocket = socket;
+                socket.bind(new InetSocketAddress(Node.getAddress().getAddress(), 0));
+                socket.connect(Address, CONNECT_TIMEOUT);
+                if (socket.getLocalSocketAddress().equals(socket.getRemoteSocketAddress())) {
+                    throw new IOException("connected to itself");
+                }
+                socket.setTcpNoDelay(true);
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+                out.write(Node.helloOp());
+                out.flush();
+                Queue.clear();
+                IsConnected = true;
+                Server.LOGGER.info("cluster link to node " + PEER + " is up");
+                Node.onLinkUp(PEER);
+                while (!IsClosed) {
+                    byte[] op = Queue.take();
+                    do {
+                        if (op == RESYNC) {
+                            throw new IOException("peer restarted, resynchronizing");
+                        }
+                        out.write(op);
+                    } while ((op = Queue.poll()) != null);
+                    out.flush();
+                }
+            }
+            catch (IOException e) {
+                if (IsConnected) {
+                    Server.LOGGER.info("cluster link to node " + PEER + " is down: " + e.getMessage());
+                }
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            finally {
+                IsConnected = false;
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    void reconnect() {
+        Queue.clear();
+        Queue.offer(RESYNC);
+    }
+
+    void close() {
+        IsClosed = true;
+        if (Worker != null) {
+            Worker.interrupt();
+        }
+        Socket socket = CurrentSocket;
+        if (socket != null) {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                Server.LOGGER.info("ignored exception on closing cluster link to node " + PEER);
+            }
+        }
+    }
+
+    private final ClusterNode Node;
+    private final int PEER;
+    private final InetSocketAddress Address;
+    private final BlockingQueue<byte[]> Queue;
+    private Thread Worker;
+    private volatile Socket CurrentSocket;
+    private volatile boolean IsConnected = false;
+    private volatile boolean IsClosed = false;
+    private static final byte[] RESYNC = new byte[0];
+    private static final int CONNECT_TIMEOUT = 1000;
+    private static final long RECONNECT_DELAY = 500;
+    private static final int BUFFER_SIZE = 65536;
+}
@@ -0,0 +1,5 @@
+package server.history;
+
+import java.nio.ByteBuffer;
+
+public record LogRecord(long offset, long timestamp, ByteBuffer frame) {  }
@@ -0,0 +1,286 @@
+package server.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+class LogSegment {
+    static final int HEADER_SIZE = 2 * Integer.BYTES + 2 * Long.BYTES;
+    private static final int INITIAL_MAP_BYTES = 65536;
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".index";
+
+    private LogSegment(Path directory, long baseOffset, int indexInterval) {
+        BaseOffset = baseOffset;
+        LogFile = directory.resolve(fileName(baseOffset, LOG_SUFFIX));
+        IndexFile = directory.resolve(fileName(baseOffset, INDEX_SUFFIX));
+        IndexInterval = indexInterval;
+    }
+
+    static LogSegment create(Path directory, long baseOffset, int capacity, int indexInterval) throws IOException {
+        LogSegment segment = new LogSegment(directory, baseOffset, indexInterval);
+        segment.NextOffset = baseOffset;
+        segment.Capacity = capacity;
+        segment.map(Math.min(capacity, INITIAL_MAP_BYTES));
+        return segment;
+    }
+
+    static LogSegment open(Path directory, long baseOffset, int capacity, int indexInterval, boolean writable) throws IOException {
+        LogSegment segment = new LogSegment(directory, baseOffset, indexInterval);
+        try (FileChannel channel = FileChannel.open(segment.LogFile, StandardOpenOption.READ)) {
+            segment.Map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        segment.recover(!writable && segment.loadIndex());
+        segment.Capacity = segment.End;
+        if (writable) {
+            try (FileChannel channel = FileChannel.open(segment.LogFile, StandardOpenOption.WRITE)) {
+                channel.truncate(segment.End);
+            }
+            segment.Capacity = Math.max(capacity, segment.End);
+            segment.map(Math.min(segment.Capacity, Math.max(INITIAL_MAP_BYTES, segment.End)));
+        }
+        return segment;
+    }
+
+    static long parseBaseOffset(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(LOG_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length()));
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    boolean hasRoom(int size) {
+        return End + HEADER_SIZE + size <= Capacity;
+    }
+
+    LogRecord append(long offset, long timestamp, ByteBuffer frame) throws IOException {
+        int position = End;
+        int size = frame.remaining();
+        ensureMapped(position + HEADER_SIZE + size);
+        CRC32C crc = new CRC32C();
+        crc.update(frame.duplicate());
+        Map.putInt(position + Integer.BYTES, (int) crc.getValue());
+        Map.putLong(position + 2 * Integer.BYTES, offset);
+        Map.putLong(position + 2 * Integer.BYTES + Long.BYTES, timestamp);
+        Map.put(position + HEADER_SIZE, frame, frame.position(), size);
+        Map.putInt(position, size);
+        if (position - LastIndexedPosition >= IndexInterval || IndexCount == 0) {
+            addIndexEntry(offset, position);
+        }
+        LastTimestamp = timestamp;
+        NextOffset = offset + 1;
+        End = position + HEADER_SIZE + size;
+        return new LogRecord(offset, timestamp, Map.slice(position + HEADER_SIZE, size).asReadOnlyBuffer());
+    }
+
+    synchronized void flush() {
+        int end = End;
+        if (end > Flushed) {
+            Map.force(Flushed, end - Flushed);
+            Flushed = end;
+        }
+    }
+
+    void seal() throws IOException {
+        flush();
+        try (FileChannel channel = FileChannel.open(LogFile, StandardOpenOption.WRITE)) {
+            channel.truncate(End);
+            channel.force(true);
+        }
+        writeIndex();
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(LogFile);
+        Files.deleteIfExists(IndexFile);
+    }
+
+    int positionOf(long offset) {
+        if (offset < BaseOffset || offset >= NextOffset) {
+            return -1;
+        }
+        int count = IndexCount;
+        long[] index = Index;
+        int low = 0;
+        int high = count - 1;
+        int position = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (BaseOffset + (int) (index[middle] >>> 32) <= offset) {
+                position = (int) index[middle];
+                low = middle + 1;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        while (position < End && offsetAt(position) < offset) {
+            position = nextPosition(position);
+        }
+        return position < End ? position : -1;
+    }
+
+    LogRecord readAt(int position) {
+        int size = Map.getInt(position);
+        return new LogRecord(
+                offsetAt(position),
+                Map.getLong(position + 2 * Integer.BYTES + Long.BYTES),
+                Map.slice(position + HEADER_SIZE, size).asReadOnlyBuffer()
+        );
+    }
+
+    int nextPosition(int position) {
+        return position + HEADER_SIZE + Map.getInt(position);
+    }
+
+    long getBaseOffset() {
+        return BaseOffset;
+    }
+
+    long getNextOffset() {
+        return NextOffset;
+    }
+
+    int getEnd() {
+        return End;
+    }
+
+    long getLastTimestamp() {
+        return LastTimestamp;
+    }
+
+    private long offsetAt(int position) {
+        return Map.getLong(position + 2 * Integer.BYTES);
+    }
+
+    private void ensureMapped(int needed) throws IOException {
+        int mapped = Map.capacity();
+        if (needed > mapped) {
+            map((int) Math.min(Capacity, Math.max(needed, 2L * mapped)));
+        }
+    }
+
+    private void map(int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+                LogFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        )) {
+            Map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+
+    private void recover(boolean fromIndex) {
+        int position = 0;
+        long expected = BaseOffset;
+        if (fromIndex && IndexCount > 0) {
+            long last = Index[IndexCount - 1];
+            position = (int) last;
+            expected = BaseOffset + (int) (last >>> 32);
+        }
+        else {
+            IndexCount = 0;
+            LastIndexedPosition = 0;
+        }
+        CRC32C crc = new CRC32C();
+        while (position + HEADER_SIZE <= Map.capacity()) {
+            int size = Map.getInt(position);
+            if (size <= 0 || position + HEADER_SIZE + size > Map.capacity() || offsetAt(position) != expected) {
+                break;
+            }
+            crc.reset();
+            crc.update(Map.slice(position + HEADER_SIZE, size));
+            if ((int) crc.getValue() != Map.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            if (IndexCount == 0 || position - LastIndexedPosition >= IndexInterval) {
+                addIndexEntry(expected, position);
+            }
+            LastTimestamp = Map.getLong(position + 2 * Integer.BYTES + Long.BYTES);
+            position += HEADER_SIZE + size;
+            ++expected;
+        }
+        End = position;
+        Flushed = position;
+        NextOffset = expected;
+    }
+
+    private void addIndexEntry(long offset, int position) {
+        if (IndexCount == Index.length) {
+            Index = Arrays.copyOf(Index, Index.length * 2);
+        }
+        Index[IndexCount] = ((offset - BaseOffset) << 32) | (position & 0xFFFFFFFFL);
+        LastIndexedPosition = position;
+        IndexCount = IndexCount + 1;
+    }
+
+    private boolean loadIndex() throws IOException {
+        if (!Files.exists(IndexFile)) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(IndexFile));
+        while (buffer.remaining() >= Long.BYTES) {
+            long entry = buffer.getLong();
+            if ((int) entry < 0 || (int) entry >= Map.capacity()) {
+                IndexCount = 0;
+                return false;
+            }
+            if (IndexCount == Index.length) {
+                Index = Arrays.copyOf(Index, Index.length * 2);
+            }
+            Index[IndexCount++] = entry;
+            LastIndexedPosition = (int) entry;
+        }
+        return IndexCount > 0;
+    }
+
+    private void writeIndex() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(IndexCount * Long.BYTES);
+        for (int i = 0; i < IndexCount; ++i) {
+            buffer.putLong(Index[i]);
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(
+                IndexFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private static String fileName(long baseOffset, String suffix) {
+        return String.format("%020d%s", baseOffset, suffix);
+    }
+
+    private final long BaseOffset;
+    private final Path LogFile;
+    private final Path IndexFile;
+    private final int IndexInterval;
+    private volatile MappedByteBuffer Map;
+    private int Capacity;
+    private long[] Index = new long[16];
+    private volatile int IndexCount = 0;
+    private int LastIndexedPosition = 0;
+    private volatile int End = 0;
+    private int Flushed = 0;
+    private volatile long NextOffset;
+    private volatile long LastTimestamp = 0;
+}
@@ -0,0 +1,206 @@
+package server.history;
+
+import server.Server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class MessageLog implements AutoCloseable {
+    public MessageLog(
+            Path directory,
+            int segmentBytes,
+            long retentionBytes,
+            long retentionMillis,
+            long flushMillis,
+            int indexInterval
+    ) throws IOException {
+        this(directory, segmentBytes, retentionBytes, retentionMillis, flushMillis, indexInterval, null);
+    }
+
+    public MessageLog(
+            Path directory,
+            int segmentBytes,
+            long retentionBytes,
+            long retentionMillis,
+            long flushMillis,
+            int indexInterval,
+            ScheduledExecutorService flusher
+    ) throws IOException {
+        Directory = directory;
+        SegmentBytes = segmentBytes;
+        RetentionBytes = retentionBytes;
+        RetentionMillis = retentionMillis;
+        IndexInterval = indexInterval;
+        Files.createDirectories(directory);
+        List<Long> baseOffsets;
+        try (Stream<Path> files = Files.list(directory)) {
+            baseOffsets = files.map(LogSegment::parseBaseOffset).filter(base -> base >= 0).sorted().toList();
+        }
+        for (int i = 0; i < baseOffsets.size(); ++i) {
+            boolean last = i == baseOffsets.size() - 1;
+            LogSegment segment = LogSegment.open(directory, baseOffsets.get(i), segmentBytes, indexInterval, last);
+            Segments.put(segment.getBaseOffset(), segment);
+        }
+        if (Segments.isEmpty()) {
+            Segments.put(0L, LogSegment.create(directory, 0, segmentBytes, indexInterval));
+        }
+        Active = Segments.lastEntry().getValue();
+        OwnFlusher = flusher == null ? newFlusher() : null;
+        long period = Math.max(1, flushMillis);
+        Flush = (flusher == null ? OwnFlusher : flusher).scheduleWithFixedDelay(
+                this::flush,
+                period,
+                period,
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    public static ScheduledExecutorService newFlusher() {
+        return Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "message-log-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public LogRecord append(ByteBuffer frame) throws IOException {
+        synchronized (this) {
+            if (IsClosed) {
+                throw new IOException("message log is closed");
+            }
+            int size = frame.remaining();
+            if (!Active.hasRoom(size)) {
+                roll(size);
+            }
+            return Active.append(Active.getNextOffset(), System.currentTimeMillis(), frame);
+        }
+    }
+
+    public List<LogRecord> read(long from, int maxRecords) {
+        List<LogRecord> records = new ArrayList<>(Math.min(maxRecords, 64));
+        long offset = Math.max(from, getStartOffset());
+        Map.Entry<Long, LogSegment> entry = Segments.floorEntry(offset);
+        while (entry != null && records.size() < maxRecords) {
+            LogSegment segment = entry.getValue();
+            int end = segment.getEnd();
+            int position = segment.positionOf(offset);
+            while (position >= 0 && position < end && records.size() < maxRecords) {
+                LogRecord record = segment.readAt(position);
+                records.add(record);
+                offset = record.offset() + 1;
+                position = segment.nextPosition(position);
+            }
+            entry = Segments.higherEntry(entry.getKey());
+        }
+        return records;
+    }
+
+    public List<LogRecord> readLast(int count) {
+        return read(Math.max(getStartOffset(), getNextOffset() - count), count);
+    }
+
+    public long getStartOffset() {
+        return Segments.firstKey();
+    }
+
+    public long getNextOffset() {
+        return Active.getNextOffset();
+    }
+
+    public long getSizeBytes() {
+        long size = 0;
+        for (LogSegment segment : Segments.values()) {
+            size += segment.getEnd();
+        }
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IsClosed = true;
+        Flush.cancel(false);
+        if (OwnFlusher != null) {
+            OwnFlusher.shutdown();
+        }
+        synchronized (FlushLock) {
+            synchronized (this) {
+                Active.seal();
+            }
+        }
+    }
+
+    private void roll(int size) throws IOException {
+        LogSegment previous = Active;
+        int capacity = Math.max(SegmentBytes, LogSegment.HEADER_SIZE + size);
+        if (previous.getEnd() == 0) {
+            previous.delete();
+        }
+        else {
+            previous.seal();
+        }
+        Active = LogSegment.create(Directory, previous.getNextOffset(), capacity, IndexInterval);
+        Segments.put(Active.getBaseOffset(), Active);
+    }
+
+    private void flush() {
+        synchronized (FlushLock) {
+            if (IsClosed) {
+                return;
+            }
+            try {
+                Active.flush();
+                enforceRetention();
+            }
+            catch (RuntimeException e) {
+                Server.LOGGER.info("cannot flush message log " + Directory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void enforceRetention() {
+        long size = getSizeBytes();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, LogSegment> entry : Segments.entrySet()) {
+            LogSegment segment = entry.getValue();
+            if (segment == Active) {
+                break;
+            }
+            boolean expired = RetentionMillis > 0 && now - segment.getLastTimestamp() > RetentionMillis;
+            boolean oversized = RetentionBytes > 0 && size > RetentionBytes;
+            if (!expired && !oversized) {
+                break;
+            }
+            Segments.remove(entry.getKey());
+            size -= segment.getEnd();
+            try {
+                segment.delete();
+            }
+            catch (IOException e) {
+                Server.LOGGER.info("cannot delete log segment " + segment.getBaseOffset() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private final Path Directory;
+    private final int SegmentBytes;
+    private final long RetentionBytes;
+    private final long RetentionMillis;
+    private final int IndexInterval;
+    private final ConcurrentSkipListMap<Long, LogSegment> Segments = new ConcurrentSkipListMap<>();
+    private volatile LogSegment Active;
+    private volatile boolean IsClosed = false;
+    private final Object FlushLock = new Object();
+    private final ScheduledExecutorService OwnFlusher;
+    private final ScheduledFuture<?> Flush;
+}
@@ -0,0 +1,190 @@
+package server.logging;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+public class AsyncAppender implements Runnable {
+    public AsyncAppender(int capacity, Writer out, Consumer<String> fallback) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("log buffer size must be a power of two, got " + capacity);
+        }
+        Slots = new Slot[capacity];
+        for (int i = 0; i < capacity; ++i) {
+            Slots[i] = new Slot();
+        }
+        MASK = capacity - 1;
+        Out = out;
+        Fallback = fallback;
+    }
+
+    public void start() {
+        Worker = new Thread(this, "log-appender");
+        Worker.setDaemon(true);
+        Worker.start();
+    }
+
+    public boolean append(Level level, UUID usid, String template, Object first, Object second, Object third) {
+        long sequence;
+        do {
+            sequence = Head.get();
+            if (sequence - Tail >= Slots.length) {
+                Dropped.increment();
+                return false;
+            }
+        } while (!Head.compareAndSet(sequence, sequence + 1));
+        Slot slot = Slots[(int) (sequence & MASK)];
+        slot.Time = System.currentTimeMillis();
+        slot.Level = level;
+        slot.Thread = Thread.currentThread().getName();
+        slot.Usid = usid;
+        slot.Template = template;
+        slot.First = first;
+        slot.Second = second;
+        slot.Third = third;
+        slot.Published = sequence;
+        return true;
+    }
+
+    public long getDropped() {
+        return Dropped.sum();
+    }
+
+    public void close() {
+        IsClosed = true;
+        if (Worker == null) {
+            return;
+        }
+        LockSupport.unpark(Worker);
+        try {
+            Worker.join(CLOSE_TIMEOUT);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        StringBuilder line = new StringBuilder(256);
+        try {
+            while (true) {
+                long tail = Tail;
+                Slot slot = Slots[(int) (tail & MASK)];
+                if (slot.Published != tail) {
+                    if (IsClosed && Head.get() == tail) {
+                        break;
+                    }
+                    flush();
+                    LockSupport.parkNanos(this, IDLE_PARK);
+                    continue;
+                }
+                line.setLength(0);
+                format(line, slot);
+                slot.clear();
+                Tail = tail + 1;
+                write(line);
+            }
+        }
+        finally {
+            flush();
+            if (Out != null) {
+                try {
+                    Out.close();
+                }
+                catch (IOException e) {
+                    Fallback.accept("cannot close log file: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void format(StringBuilder line, Slot slot) {
+        if (Out != null) {
+            line.append(Instant.ofEpochMilli(slot.Time)).append(' ');
+        }
+        line.append(slot.Level.getName()).append(" thread=").append(slot.Thread);
+        if (slot.Usid != null) {
+            line.append(" usid=").append(slot.Usid);
+        }
+        line.append(' ');
+        String template = slot.Template;
+        Object[] arguments = {slot.First, slot.Second, slot.Third};
+        int argument = 0;
+        int from = 0;
+        int at;
+        while ((at = template.indexOf("{}", from)) >= 0 && argument < arguments.length) {
+            line.append(template, from, at).append(arguments[argument++]);
+            from = at + 2;
+        }
+        line.append(template, from, template.length());
+    }
+
+    private void write(StringBuilder line) {
+        if (Out == null) {
+            Fallback.accept(line.toString());
+            return;
+        }
+        try {
+            Out.append(line).append('\n');
+            IsDirty = true;
+        }
+        catch (IOException e) {
+            Dropped.increment();
+        }
+    }
+
+    private void flush() {
+        if (!IsDirty) {
+            return;
+        }
+        IsDirty = false;
+        try {
+            Out.flush();
+        }
+        catch (IOException e) {
+            Fallback.accept("cannot flush log file: " + e.getMessage());
+        }
+    }
+
+    private static final class Slot {
+        void clear() {
+            Level = null;
+            Thread = null;
+            Usid = null;
+            Template = null;
+            First = null;
+            Second = null;
+            Third = null;
+        }
+
+        volatile long Published = -1;
+        long Time;
+        Level Level;
+        String Thread;
+        UUID Usid;
+        String Template;
+        Object First;
+        Object Second;
+        Object Third;
+    }
+
+    private final Slot[] Slots;
+    private final int MASK;
+    private final Writer Out;
+    private final Consumer<String> Fallback;
+    private final AtomicLong Head = new AtomicLong(0);
+    private final LongAdder Dropped = new LongAdder();
+    private volatile long Tail = 0;
+    private volatile boolean IsClosed = false;
+    private boolean IsDirty = false;
+    private Thread Worker;
+    private static final long IDLE_PARK = 5_000_000;
+    private static final long CLOSE_TIMEOUT = 5000;
+}
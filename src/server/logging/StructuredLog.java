@@ -0,0 +1,66 @@
+package server.logging;
+
+import java.util.UUID;
+import java.util.logging.Level;
+
+public class StructuredLog {
+    public StructuredLog(Level threshold, double sessionSample, AsyncAppender appender) {
+        THRESHOLD = appender == null ? Level.OFF.intValue() : threshold.intValue();
+        SAMPLE = (int) Math.round(Math.max(0, Math.min(1, sessionSample)) * SAMPLE_SCALE);
+        Appender = appender;
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.intValue() >= THRESHOLD && THRESHOLD != OFF;
+    }
+
+    public boolean isEnabled(Level level, UUID usid) {
+        return isEnabled(level) && (usid == null || level.intValue() >= Level.WARNING.intValue() || isSampled(usid));
+    }
+
+    public boolean isSampled(UUID usid) {
+        return SAMPLE >= SAMPLE_SCALE || Math.floorMod(usid.hashCode(), SAMPLE_SCALE) < SAMPLE;
+    }
+
+    public void info(UUID usid, String template) {
+        log(Level.INFO, usid, template, null, null, null);
+    }
+
+    public void info(UUID usid, String template, Object first) {
+        log(Level.INFO, usid, template, first, null, null);
+    }
+
+    public void info(UUID usid, String template, Object first, Object second) {
+        log(Level.INFO, usid, template, first, second, null);
+    }
+
+    public void info(UUID usid, String template, Object first, Object second, Object third) {
+        log(Level.INFO, usid, template, first, second, third);
+    }
+
+    public void warning(UUID usid, String template, Object first) {
+        log(Level.WARNING, usid, template, first, null, null);
+    }
+
+    public void log(Level level, UUID usid, String template, Object first, Object second, Object third) {
+        if (isEnabled(level, usid)) {
+            Appender.append(level, usid, template, first, second, third);
+        }
+    }
+
+    public long getDropped() {
+        return Appender == null ? 0 : Appender.getDropped();
+    }
+
+    public void close() {
+        if (Appender != null) {
+            Appender.close();
+        }
+    }
+
+    private final int THRESHOLD;
+    private final int SAMPLE;
+    private final AsyncAppender Appender;
+    private static final int OFF = Level.OFF.intValue();
+    private static final int SAMPLE_SCALE = 10000;
+}
@@ -0,0 +1,96 @@
+package server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Histogram {
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        Counts.incrementAndGet(indexOf(value));
+        Count.increment();
+        Sum.add(value);
+        long max = Max.get();
+        while (value > max && !Max.compareAndSet(max, value)) {
+            max = Max.get();
+        }
+    }
+
+    public long getCount() {
+        return Count.sum();
+    }
+
+    public long getSum() {
+        return Sum.sum();
+    }
+
+    public long getMax() {
+        return Max.get();
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getSum() / count;
+    }
+
+    public long getValueAtPercentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts[i] = Counts.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + String.format(" mean=%.1f", getMean())
+                + " p50=" + getValueAtPercentile(50) + " p90=" + getValueAtPercentile(90)
+                + " p99=" + getValueAtPercentile(99) + " p999=" + getValueAtPercentile(99.9)
+                + " max=" + getMax();
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long lowestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int group = index / SUB_BUCKETS;
+        long sub = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (group - 1);
+    }
+
+    static long highestValueAt(int index) {
+        return index + 1 < BUCKETS ? lowestValueAt(index + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private final AtomicLongArray Counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder Count = new LongAdder();
+    private final LongAdder Sum = new LongAdder();
+    private final AtomicLong Max = new AtomicLong(0);
+}
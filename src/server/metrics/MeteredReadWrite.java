@@ -0,0 +1,43 @@
+package server.metrics;
+
+import messages.Message;
+import messages.parsing.MessageReadWrite;
+import messages.parsing.ParsingException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public class MeteredReadWrite implements MessageReadWrite {
+    public MeteredReadWrite(MessageReadWrite codec, String name, MetricsRegistry registry) {
+        Codec = codec;
+        String labels = "codec=\"" + name + "\"";
+        DecodeTime = registry.histogram("chat_decode_nanoseconds", labels, "Time spent decoding one message");
+        EncodeTime = registry.histogram("chat_encode_nanoseconds", labels, "Time spent encoding one message");
+    }
+
+    @Override
+    public Message parse(InputStream in) throws ParsingException {
+        long started = System.nanoTime();
+        try {
+            return Codec.parse(in);
+        }
+        finally {
+            DecodeTime.record(System.nanoTime() - started);
+        }
+    }
+
+    @Override
+    public void encode(OutputStream out, Message message) throws ParsingException {
+        long started = System.nanoTime();
+        try {
+            Codec.encode(out, message);
+        }
+        finally {
+            EncodeTime.record(System.nanoTime() - started);
+        }
+    }
+
+    private final MessageReadWrite Codec;
+    private final Histogram DecodeTime;
+    private final Histogram EncodeTime;
+}
@@ -0,0 +1,73 @@
+package server.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+public class MetricsEndpoint {
+    public MetricsEndpoint(MetricsRegistry registry, String address, int port) {
+        Address = new InetSocketAddress(address, port);
+        Pages.put(PATH, registry::scrape);
+    }
+
+    public void addPage(String path, Supplier<String> page) {
+        Pages.put(path, page);
+    }
+
+    public void start() throws IOException {
+        Http = HttpServer.create(Address, BACKLOG);
+        for (Map.Entry<String, Supplier<String>> page : Pages.entrySet()) {
+            Http.createContext(page.getKey(), exchange -> handle(exchange, page.getValue()));
+        }
+        Http.setExecutor(Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-endpoint");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        Http.start();
+    }
+
+    public InetSocketAddress getAddress() {
+        return Http == null ? Address : Http.getAddress();
+    }
+
+    public void close() {
+        if (Http != null) {
+            Http.stop(0);
+        }
+    }
+
+    private void handle(HttpExchange exchange, Supplier<String> page) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = page.get().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private final InetSocketAddress Address;
+    private final Map<String, Supplier<String>> Pages = new LinkedHashMap<>();
+    private HttpServer Http;
+    private static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int BACKLOG = 8;
+}
@@ -0,0 +1,107 @@
+package server.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+public class MetricsRegistry {
+    public LongAdder counter(String name, String help) {
+        return counter(name, "", help);
+    }
+
+    public LongAdder counter(String name, String labels, String help) {
+        LongAdder counter = new LongAdder();
+        register(name, Kind.COUNTER, help, labels, counter);
+        return counter;
+    }
+
+    public void counter(String name, String help, LongSupplier source) {
+        register(name, Kind.COUNTER, help, "", source);
+    }
+
+    public void gauge(String name, String help, LongSupplier source) {
+        gauge(name, "", help, source);
+    }
+
+    public void gauge(String name, String labels, String help, LongSupplier source) {
+        register(name, Kind.GAUGE, help, labels, source);
+    }
+
+    public Histogram histogram(String name, String help) {
+        return histogram(name, "", help);
+    }
+
+    public Histogram histogram(String name, String labels, String help) {
+        Histogram histogram = new Histogram();
+        register(name, Kind.SUMMARY, help, labels, histogram);
+        return histogram;
+    }
+
+    public void histogram(String name, String labels, String help, Histogram histogram) {
+        register(name, Kind.SUMMARY, help, labels, histogram);
+    }
+
+    public synchronized String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family family : Families.values()) {
+            out.append("# HELP ").append(family.name()).append(' ').append(family.help()).append('\n');
+            out.append("# TYPE ").append(family.name()).append(' ').append(family.kind().name().toLowerCase()).append('\n');
+            for (Sample sample : family.samples()) {
+                if (sample.source() instanceof Histogram histogram) {
+                    for (double quantile : QUANTILES) {
+                        String labels = join(sample.labels(), "quantile=\"" + quantile + "\"");
+                        line(out, family.name(), labels, histogram.getValueAtPercentile(quantile * 100));
+                    }
+                    line(out, family.name() + "_sum", sample.labels(), histogram.getSum());
+                    line(out, family.name() + "_count", sample.labels(), histogram.getCount());
+                    line(out, family.name() + "_max", sample.labels(), histogram.getMax());
+                }
+                else if (sample.source() instanceof LongAdder counter) {
+                    line(out, family.name(), sample.labels(), counter.sum());
+                }
+                else {
+                    line(out, family.name(), sample.labels(), ((LongSupplier) sample.source()).getAsLong());
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private synchronized void register(String name, Kind kind, String help, String labels, Object source) {
+        Family family = Families.computeIfAbsent(name, key -> new Family(key, kind, help, new ArrayList<>()));
+        if (family.kind() != kind) {
+            throw new IllegalArgumentException("metric " + name + " is already registered as " + family.kind());
+        }
+        family.samples().add(new Sample(labels, source));
+    }
+
+    private static void line(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String join(String labels, String label) {
+        return labels.isEmpty() ? label : labels + "," + label;
+    }
+
+    private enum Kind {
+        COUNTER,
+        GAUGE,
+        SUMMARY
+    }
+
+    private record Family(String name, Kind kind, String help, List<Sample> samples) {
+    }
+
+    private record Sample(String labels, Object source) {
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private final Map<String, Family> Families = new LinkedHashMap<>();
+}
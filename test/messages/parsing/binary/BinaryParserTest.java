@@ -0,0 +1,109 @@
+package messages.parsing.binary;
+
+import messages.ClientLogin;
+import messages.Message;
+import messages.MessageType;
+import messages.ServerHistory;
+import messages.ServerList;
+import messages.ServerMessage;
+import messages.parsing.MessageReadWrite;
+import messages.parsing.ParsingException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryParserTest {
+    @Test
+    void roundTripsLists() throws ParsingException {
+        ArrayList<ClientLogin> users = new ArrayList<>(List.of(new ClientLogin("alice", "gui"), new ClientLogin("bob", null)));
+        Message decoded = roundTrip(new Message(MessageType.SERVER_LIST_RESPONSE, new ServerList(users, 7)));
+        assertEquals(new ServerList(users, 7), decoded.getMessage());
+
+        ArrayList<ServerMessage> messages = new ArrayList<>(List.of(new ServerMessage("hi", "alice", 3, "lobby")));
+        decoded = roundTrip(new Message(MessageType.SERVER_HISTORY_RESPONSE, new ServerHistory(messages)));
+        assertEquals(new ServerHistory(messages), decoded.getMessage());
+    }
+
+    @Test
+    void rejectsNegativeListCount() {
+        ByteBuffer frame = ByteBuffer.allocate(14);
+        frame.put((byte) MessageType.SERVER_LIST_RESPONSE.ordinal()).putLong(0);
+        frame.put(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F}).flip();
+        assertThrows(ParsingException.class, () -> PARSER.parse(frame));
+    }
+
+    @Test
+    void rejectsListCountBeyondFrame() {
+        ByteBuffer frame = ByteBuffer.allocate(3);
+        frame.put((byte) MessageType.SERVER_HISTORY_RESPONSE.ordinal()).put(new byte[] {(byte) 0x80, 0x7F}).flip();
+        assertThrows(ParsingException.class, () -> PARSER.parse(frame));
+    }
+
+    @Test
+    void rejectsBadStringLengths() {
+        ByteBuffer negative = ByteBuffer.allocate(6);
+        negative.put((byte) MessageType.SERVER_ERROR.ordinal());
+        negative.put(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F}).flip();
+        assertThrows(ParsingException.class, () -> PARSER.parse(negative));
+
+        ByteBuffer truncated = ByteBuffer.allocate(4);
+        truncated.put((byte) MessageType.SERVER_ERROR.ordinal()).put((byte) 10).put((byte) 'h').put((byte) 'i').flip();
+        assertThrows(ParsingException.class, () -> PARSER.parse(truncated));
+    }
+
+    @Test
+    void parsesStreamsThatCannotEstimateWhatIsLeft() throws ParsingException {
+        ArrayList<ServerMessage> messages = new ArrayList<>(List.of(new ServerMessage("hi", "alice", 3, "lobby")));
+        ByteBuffer frame = PARSER.encodeFrame(new Message(MessageType.SERVER_HISTORY_RESPONSE, new ServerHistory(messages)));
+        byte[] bytes = new byte[frame.remaining() - Integer.BYTES];
+        frame.position(Integer.BYTES).get(bytes);
+        InputStream in = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int available() {
+                return 0;
+            }
+        };
+        assertEquals(new ServerHistory(messages), PARSER.parse(in).getMessage());
+    }
+
+    @Test
+    void rejectsLengthsBeyondTheFrameLimit() throws ParsingException {
+        byte[] bytes = {(byte) MessageType.SERVER_ERROR.ordinal(), 4, 'a', 'b', 'c'};
+        assertThrows(ParsingException.class, () -> new BinaryParser(3).parse(new ByteArrayInputStream(bytes)));
+        assertThrows(ParsingException.class, () -> MessageReadWrite.forName("binary", 3).parse(new ByteArrayInputStream(bytes)));
+        byte[] fits = {(byte) MessageType.SERVER_ERROR.ordinal(), 3, 'a', 'b', 'c'};
+        assertEquals(MessageType.SERVER_ERROR, MessageReadWrite.forName("binary", fits.length).parse(new ByteArrayInputStream(fits)).getType());
+    }
+
+    @Test
+    void rejectsUnknownTypes() {
+        ByteBuffer frame = ByteBuffer.wrap(new byte[] {(byte) MessageType.values().length});
+        assertThrows(ParsingException.class, () -> PARSER.parse(frame));
+    }
+
+    @Test
+    void tellsClientMessagesApart() {
+        assertTrue(MessageType.CLIENT_MESSAGE.isFromClient());
+        assertTrue(MessageType.CLIENT_PONG.isFromClient());
+        assertFalse(MessageType.SERVER_LIST_RESPONSE.isFromClient());
+        assertFalse(MessageType.SERVER_ERROR.isFromClient());
+    }
+
+    private static Message roundTrip(Message message) throws ParsingException {
+        ByteBuffer frame = PARSER.encodeFrame(message);
+        Message decoded = PARSER.parse(frame.position(Integer.BYTES));
+        assertEquals(message.getType(), decoded.getType());
+        return decoded;
+    }
+
+    private static final BinaryParser PARSER = new BinaryParser();
+}
@@ -0,0 +1,61 @@
+package messages.parsing.xml;
+
+import messages.Message;
+import messages.MessageType;
+import messages.ServerMessage;
+import messages.parsing.ParsingException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class XMLParserTest {
+    @Test
+    void keepsCarriageReturns() throws ParsingException {
+        ServerMessage sent = new ServerMessage("line1\r\nline2\r", "bob", 4, "lobby");
+        ByteBuffer frame = PARSER.encodeFrame(new Message(MessageType.SERVER_MESSAGE, sent));
+        String xml = StandardCharsets.UTF_8.decode(frame.duplicate().position(Integer.BYTES)).toString();
+        assertTrue(xml.contains("line1&#13;\nline2&#13;"), xml);
+        assertEquals(sent, PARSER.parse(frame.position(Integer.BYTES)).getMessage());
+    }
+
+    @Test
+    void roundTripsMarkupAndSupplementaryCharacters() throws ParsingException {
+        ServerMessage sent = new ServerMessage("a<b>&c \"q\" ]]> 😀 привет", "bob", 1, null);
+        ByteBuffer frame = PARSER.encodeFrame(new Message(MessageType.SERVER_MESSAGE, sent));
+        assertEquals(sent, PARSER.parse(frame.position(Integer.BYTES)).getMessage());
+    }
+
+    @Test
+    void rejectsUnknownRootElement() {
+        assertThrows(ParsingException.class, () -> PARSER.parse(xml("<foo/>")));
+        assertThrows(ParsingException.class, () -> PARSER.parse(xml("<command name=\"nope\"/>")));
+    }
+
+    @Test
+    void rejectsMalformedDocuments() {
+        assertThrows(ParsingException.class, () -> PARSER.parse(xml("<command name=\"login\">")));
+        assertThrows(ParsingException.class, () -> PARSER.parse(xml("<!DOCTYPE x [<!ENTITY e \"e\">]><command name=\"login\"/>")));
+    }
+
+    @Test
+    void rejectsEmptyOrMissingRequiredFields() {
+        String session = "<session>" + UUID.randomUUID() + "</session>";
+        assertThrows(ParsingException.class, () -> PARSER.parse(xml("<command name=\"message\">" + session + "<message/></command>")));
+        assertThrows(ParsingException.class, () -> PARSER.parse(xml("<command name=\"message\">" + session + "<message></message></command>")));
+        assertThrows(ParsingException.class, () -> PARSER.parse(xml("<command name=\"message\">" + session + "</command>")));
+        assertThrows(ParsingException.class, () -> PARSER.parse(xml("<command name=\"login\"><name/><type>t</type></command>")));
+        assertThrows(ParsingException.class, () -> PARSER.parse(xml("<error><message/></error>")));
+    }
+
+    private static ByteBuffer xml(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final XMLParser PARSER = new XMLParser();
+}
@@ -0,0 +1,82 @@
+package messages.transport;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FrameDecoderTest {
+    @Test
+    void decodesEveryFrameInOneRead() throws IOException {
+        List<String> frames = new ArrayList<>();
+        FrameDecoder decoder = new FrameDecoder(POOL, 256, 1024);
+        decoder.read(channel(frame("one"), frame("two"), frame("three")), collect(frames));
+        assertEquals(List.of("one", "two", "three"), frames);
+    }
+
+    @Test
+    void growsForFramesLargerThanTheReadBuffer() throws IOException {
+        List<String> frames = new ArrayList<>();
+        FrameDecoder decoder = new FrameDecoder(POOL, 256, 1024);
+        String large = "x".repeat(1000);
+        ReadableByteChannel channel = channel(frame(large), frame("after"));
+        while (frames.size() < 2 && decoder.read(channel, collect(frames)) != -1) {  }
+        assertEquals(List.of(large, "after"), frames);
+    }
+
+    @Test
+    void rejectsFramesAboveTheLimit() {
+        FrameDecoder decoder = new FrameDecoder(POOL, 256, 1024);
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(1025).flip();
+        assertThrows(FrameTooLargeException.class, () -> decoder.read(channel(header), frame -> true));
+    }
+
+    @Test
+    void rejectsNegativeFrameSizes() {
+        FrameDecoder decoder = new FrameDecoder(POOL, 256, 1024);
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(-1).flip();
+        assertThrows(FrameTooLargeException.class, () -> decoder.read(channel(header), frame -> true));
+    }
+
+    @Test
+    void stopsWhenTheHandlerDeclines() throws IOException {
+        List<String> frames = new ArrayList<>();
+        FrameDecoder decoder = new FrameDecoder(POOL, 256, 1024);
+        decoder.read(channel(frame("one"), frame("two")), frame -> {
+            collect(frames).onFrame(frame);
+            return false;
+        });
+        assertEquals(List.of("one"), frames);
+    }
+
+    private static FrameHandler collect(List<String> frames) {
+        return frame -> {
+            frames.add(StandardCharsets.UTF_8.decode(frame).toString());
+            return true;
+        };
+    }
+
+    private static ByteBuffer frame(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes).flip();
+    }
+
+    private static ReadableByteChannel channel(ByteBuffer... frames) {
+        ByteBuffer stream = ByteBuffer.allocate(frames.length * 1024 + 1024);
+        for (ByteBuffer frame : frames) {
+            stream.put(frame);
+        }
+        return Channels.newChannel(new ByteArrayInputStream(stream.array(), 0, stream.position()));
+    }
+
+    private static final BufferPool POOL = new BufferPool(256, 16384, 64);
+}
@@ -0,0 +1,168 @@
+package server;
+
+import messages.Heartbeat;
+import messages.Message;
+import messages.MessageType;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DispatcherTest {
+    @BeforeAll
+    static void start() throws Exception {
+        Fixture = TestServer.open("dispatch_threads=1", "dispatch_queue_capacity=" + CAPACITY);
+        ControlServer = Fixture.getServer();
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        Fixture.close();
+    }
+
+    @Test
+    void keepsEverySessionInOrder() throws Exception {
+        Dispatcher dispatcher = new Dispatcher(ControlServer, 4, 1024);
+        dispatcher.start();
+        try {
+            int sessions = 16;
+            int perSession = 500;
+            List<List<Integer>> handled = new ArrayList<>();
+            UUID[] usids = new UUID[sessions];
+            for (int i = 0; i < sessions; ++i) {
+                handled.add(Collections.synchronizedList(new ArrayList<>()));
+                usids[i] = UUID.randomUUID();
+            }
+            CountDownLatch done = new CountDownLatch(sessions * perSession);
+            for (int n = 0; n < perSession; ++n) {
+                for (int i = 0; i < sessions; ++i) {
+                    List<Integer> log = handled.get(i);
+                    int value = n;
+                    assertTrue(dispatcher.submitAction(usids[i], () -> {
+                        log.add(value);
+                        done.countDown();
+                    }));
+                }
+            }
+            assertTrue(done.await(TIMEOUT_S, TimeUnit.SECONDS));
+            for (List<Integer> log : handled) {
+                for (int n = 0; n < perSession; ++n) {
+                    assertEquals(n, (int) log.get(n));
+                }
+            }
+        }
+        finally {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    void refusesMessagesToAFullShardAndResumesWaiters() throws Exception {
+        Dispatcher dispatcher = new Dispatcher(ControlServer, 1, CAPACITY);
+        dispatcher.start();
+        try {
+            UUID usid = UUID.randomUUID();
+            CountDownLatch blocked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            dispatcher.submitAction(usid, () -> {
+                blocked.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(blocked.await(TIMEOUT_S, TimeUnit.SECONDS));
+            for (int i = 0; i < CAPACITY; ++i) {
+                assertTrue(dispatcher.submit(ping(), usid));
+            }
+            long stalls = dispatcher.getStalls();
+            assertFalse(dispatcher.submit(ping(), usid));
+            assertEquals(stalls + 1, dispatcher.getStalls());
+
+            CountDownLatch resumed = new CountDownLatch(1);
+            dispatcher.awaitRoom(usid, resumed::countDown);
+            assertEquals(1, resumed.getCount());
+
+            CountDownLatch action = new CountDownLatch(1);
+            assertTrue(dispatcher.submitAction(usid, action::countDown));
+            assertTrue(dispatcher.submitClose(usid));
+
+            release.countDown();
+            assertTrue(resumed.await(TIMEOUT_S, TimeUnit.SECONDS));
+            assertTrue(action.await(TIMEOUT_S, TimeUnit.SECONDS));
+        }
+        finally {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    void runsAWaiterAtOnceWhenTheShardHasRoom() {
+        Dispatcher dispatcher = new Dispatcher(ControlServer, 1, CAPACITY);
+        CountDownLatch resumed = new CountDownLatch(1);
+        dispatcher.awaitRoom(UUID.randomUUID(), resumed::countDown);
+        assertEquals(0, resumed.getCount());
+    }
+
+    @Test
+    void floodingReaderIsPausedNotDropped() throws Exception {
+        Fixture.start();
+        int pings = 500;
+        try (Socket flooder = Fixture.connect(); Socket bystander = Fixture.connect()) {
+            ByteArrayOutputStream burst = new ByteArrayOutputStream();
+            for (int i = 0; i < pings; ++i) {
+                burst.write(frame(i));
+            }
+            flooder.getOutputStream().write(burst.toByteArray());
+            flooder.getOutputStream().flush();
+
+            bystander.getOutputStream().write(frame(-1));
+            assertTrue(readFrame(bystander).contains("pong"));
+
+            for (int i = 0; i < pings; ++i) {
+                String reply = readFrame(flooder);
+                assertTrue(reply.contains("<nonce>" + i + "</nonce>"), reply);
+            }
+        }
+    }
+
+    private static Message ping() {
+        return new Message(MessageType.CLIENT_PING, new Heartbeat(0));
+    }
+
+    private static byte[] frame(long nonce) {
+        byte[] xml = ("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>"
+                + "<command name=\"ping\"><nonce>" + nonce + "</nonce></command>").getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Integer.BYTES + xml.length).putInt(xml.length).put(xml).array();
+    }
+
+    private static String readFrame(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final int CAPACITY = 2;
+    private static final long TIMEOUT_S = TestServer.TIMEOUT_S;
+    private static TestServer Fixture;
+    private static Server ControlServer;
+}
@@ -0,0 +1,25 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExecutionModeTest {
+    @Test
+    void virtualNeedsVirtualThreadsOrRunsAsReactor() throws Exception {
+        try (TestServer fixture = TestServer.open("execution=virtual")) {
+            ExecutionMode expected = Server.hasVirtualThreads() ? ExecutionMode.VIRTUAL : ExecutionMode.REACTOR;
+            assertEquals(expected, fixture.getServer().getExecutionMode());
+        }
+    }
+
+    @Test
+    void threadAndReactorAreKeptAsConfigured() throws Exception {
+        try (TestServer fixture = TestServer.open("execution=thread")) {
+            assertEquals(ExecutionMode.THREAD, fixture.getServer().getExecutionMode());
+        }
+        try (TestServer fixture = TestServer.open("execution=reactor")) {
+            assertEquals(ExecutionMode.REACTOR, fixture.getServer().getExecutionMode());
+        }
+    }
+}
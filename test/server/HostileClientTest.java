@@ -0,0 +1,105 @@
+package server;
+
+import client.Client;
+import messages.Message;
+import messages.MessageType;
+import messages.ServerMessage;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class HostileClientTest {
+    @BeforeAll
+    static void start() throws Exception {
+        Fixture = TestServer.open().start();
+        Victim = new Client("xml");
+        connect(Victim, "victim");
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        Victim.close();
+        Fixture.close();
+    }
+
+    @Test
+    void unknownRootElementClosesOnlyThatConnection() throws Exception {
+        assertClosedAfter("<foo/>");
+        assertLoopServes("after unknown root");
+    }
+
+    @Test
+    void serverMessageFromClientClosesOnlyThatConnection() throws Exception {
+        assertClosedAfter("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?><success/>");
+        assertLoopServes("after server message");
+    }
+
+    @Test
+    void malformedFrameClosesOnlyThatConnection() throws Exception {
+        assertClosedAfter("<command name=\"login\"><name>");
+        assertLoopServes("after malformed frame");
+    }
+
+    private static void assertClosedAfter(String xml) throws Exception {
+        try (Socket socket = Fixture.connect()) {
+            byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+            OutputStream out = socket.getOutputStream();
+            out.write(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+            out.write(bytes);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            while (in.read() != -1) {  }
+        }
+    }
+
+    private static void assertLoopServes(String text) throws Exception {
+        VictimMessages.clear();
+        Victim.sendMessage(text);
+        Message echo;
+        do {
+            echo = VictimMessages.poll(TIMEOUT_S, TimeUnit.SECONDS);
+            assertNotNull(echo, "victim got no reply, the event loop is gone");
+        } while (echo.getType() != MessageType.SERVER_MESSAGE);
+        assertEquals(text, ((ServerMessage) echo.getMessage()).message());
+
+        Client newcomer = new Client("xml");
+        try {
+            connect(newcomer, "newcomer-" + System.nanoTime());
+        }
+        finally {
+            newcomer.close();
+        }
+    }
+
+    private static void connect(Client client, String name) throws Exception {
+        BlockingQueue<Message> logins = new LinkedBlockingQueue<>();
+        client.setMessageListener(message -> {
+            if (message.getType() == MessageType.SERVER_LOGIN_SUCCESS) {
+                logins.offer(message);
+            }
+            else if (client == Victim) {
+                VictimMessages.offer(message);
+            }
+        });
+        Fixture.connect(client);
+        client.login(name);
+        assertNotNull(logins.poll(TIMEOUT_S, TimeUnit.SECONDS), name + " did not log in");
+    }
+
+    private static final long TIMEOUT_S = TestServer.TIMEOUT_S;
+    private static final BlockingQueue<Message> VictimMessages = new LinkedBlockingQueue<>();
+    private static TestServer Fixture;
+    private static Client Victim;
+}
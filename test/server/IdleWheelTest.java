@@ -0,0 +1,102 @@
+package server;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdleWheelTest {
+    @BeforeAll
+    static void start() throws Exception {
+        ServerConfigurations.override(new String[] {
+                "logging=false",
+                "log_dir=" + Files.createTempDirectory("chat-test"),
+                "metrics_port=0",
+                "idle_timeout_ms=" + TIMEOUT_TICKS * Server.TIMEOUT,
+                "idle_ping_ms=" + PING_TICKS * Server.TIMEOUT
+        });
+        ControlServer = new Server(0);
+        Wheel = ControlServer.IDLE_WHEEL;
+    }
+
+    @AfterAll
+    static void stop() {
+        ServerConfigurations.override(new String[] {
+                "idle_timeout_ms=90000",
+                "idle_ping_ms=30000"
+        });
+    }
+
+    @Test
+    void pingsHeartbeatClientsThenReapsThem() {
+        ClientHandler handler = watch();
+        handler.setHeartbeat(true);
+        long pings = Wheel.getPings();
+        advance(PING_TICKS);
+        assertEquals(pings + 1, Wheel.getPings());
+        assertTrue(handler.getQueuedBytes() > 0, "no ping queued");
+        assertTrue(handler.isOpen());
+        advance(TIMEOUT_TICKS - PING_TICKS);
+        assertFalse(handler.isOpen());
+    }
+
+    @Test
+    void activityPostponesReaping() {
+        ClientHandler handler = watch();
+        handler.setHeartbeat(true);
+        advance(TIMEOUT_TICKS - 1);
+        handler.touch();
+        advance(TIMEOUT_TICKS - 1);
+        assertTrue(handler.isOpen());
+        advance(1);
+        assertFalse(handler.isOpen());
+    }
+
+    @Test
+    void neverPingsClientsThatDidNotLogIn() {
+        ClientHandler handler = watch();
+        long pings = Wheel.getPings();
+        advance(TIMEOUT_TICKS - 1);
+        assertEquals(pings, Wheel.getPings());
+        assertEquals(0, handler.getQueuedBytes());
+        assertTrue(handler.isOpen());
+        advance(1);
+        assertFalse(handler.isOpen());
+    }
+
+    @Test
+    void leavesLegacyClientsAlone() {
+        ClientHandler handler = watch();
+        handler.setHeartbeat(false);
+        long pings = Wheel.getPings();
+        long reaped = Wheel.getReaped();
+        advance(3 * TIMEOUT_TICKS);
+        assertEquals(pings, Wheel.getPings());
+        assertEquals(reaped, Wheel.getReaped());
+        assertEquals(0, handler.getQueuedBytes());
+        assertTrue(handler.isOpen());
+    }
+
+    private static ClientHandler watch() {
+        ClientHandler handler = new ClientHandler(null, ControlServer, UUID.randomUUID(), ExecutionMode.VIRTUAL);
+        Wheel.watch(handler);
+        return handler;
+    }
+
+    private static void advance(int ticks) {
+        for (int i = 0; i < ticks; ++i) {
+            Wheel.advance();
+        }
+    }
+
+    private static final int PING_TICKS = 3;
+    private static final int TIMEOUT_TICKS = 10;
+    private static Server ControlServer;
+    private static IdleWheel Wheel;
+}
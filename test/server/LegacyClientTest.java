@@ -0,0 +1,224 @@
+package server;
+
+import client.Client;
+import messages.Message;
+import messages.MessageType;
+import messages.ServerPrivateMessage;
+import messages.ServerPrivateReceipt;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LegacyClientTest {
+    @BeforeAll
+    static void start() throws Exception {
+        Fixture = TestServer.open(
+                "slow_consumer_policy=resync",
+                "output_high_watermark=" + HIGH_WATERMARK,
+                "output_low_watermark=" + LOW_WATERMARK
+        ).start();
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        Fixture.close();
+    }
+
+    @Test
+    void legacyClientGetsNoListDeltas() throws Exception {
+        try (Socket legacy = connectLegacy("legacy")) {
+            DataInputStream in = new DataInputStream(legacy.getInputStream());
+            BlockingQueue<Message> modernMessages = new LinkedBlockingQueue<>();
+            Client modern = new Client("xml");
+            try {
+                modern.setMessageListener(modernMessages::offer);
+                Fixture.connect(modern);
+                modern.login("modern");
+                receive(modernMessages, MessageType.SERVER_LIST_ADDED);
+                modern.sendMessage("after modern login");
+                readUntil(in, "after modern login", "listadded");
+            }
+            finally {
+                modern.close();
+            }
+        }
+    }
+
+    @Test
+    void privateMessageToALegacyClientIsRejected() throws Exception {
+        try (Socket legacy = connectLegacy("legacy-private")) {
+            DataInputStream in = new DataInputStream(legacy.getInputStream());
+            BlockingQueue<Message> modernMessages = new LinkedBlockingQueue<>();
+            Client modern = new Client("xml");
+            try {
+                modern.setMessageListener(modernMessages::offer);
+                Fixture.connect(modern);
+                modern.login("modern-private");
+                receive(modernMessages, MessageType.SERVER_LOGIN_SUCCESS);
+                modern.sendPrivateMessage("legacy-private", "hello");
+                Message receipt = receive(modernMessages, MessageType.SERVER_PRIVATE_RECEIPT);
+                assertEquals(ServerPrivateReceipt.Status.REJECTED, ((ServerPrivateReceipt) receipt.getMessage()).status());
+                modern.sendMessage("after private message");
+                readUntil(in, "after private message", "name=\"private\"");
+            }
+            finally {
+                modern.close();
+            }
+        }
+    }
+
+    @Test
+    void legacyLoginLeavesStoredPrivateMessagesInTheMailbox() throws Exception {
+        BlockingQueue<Message> senderMessages = new LinkedBlockingQueue<>();
+        Client sender = new Client("xml");
+        try {
+            sender.setMessageListener(senderMessages::offer);
+            Fixture.connect(sender);
+            sender.login("sender-stored");
+            receive(senderMessages, MessageType.SERVER_LOGIN_SUCCESS);
+            sender.sendPrivateMessage("stored-private", "kept for later");
+            Message receipt = receive(senderMessages, MessageType.SERVER_PRIVATE_RECEIPT);
+            assertEquals(ServerPrivateReceipt.Status.STORED, ((ServerPrivateReceipt) receipt.getMessage()).status());
+
+            try (Socket legacy = connectLegacy("stored-private")) {
+                sender.sendMessage("after legacy login");
+                readUntil(new DataInputStream(legacy.getInputStream()), "after legacy login", "name=\"private\"");
+            }
+
+            BlockingQueue<Message> recipientMessages = new LinkedBlockingQueue<>();
+            Client recipient = loginWhenFree("stored-private", recipientMessages);
+            try {
+                Message letter = receive(recipientMessages, MessageType.SERVER_PRIVATE_MESSAGE);
+                assertEquals("kept for later", ((ServerPrivateMessage) letter.getMessage()).message());
+            }
+            finally {
+                recipient.close();
+            }
+        }
+        finally {
+            sender.close();
+        }
+    }
+
+    @Test
+    void onlyClientsThatAdvertiseResyncGetTheMarker() throws Exception {
+        assertEquals(0, resyncsAfterFalling(false));
+        assertEquals(1, resyncsAfterFalling(true));
+    }
+
+    private static long resyncsAfterFalling(boolean resync) throws Exception {
+        Server server = Fixture.getServer();
+        try (ServerSocketChannel acceptor = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+             SocketChannel channel = SocketChannel.open(acceptor.getLocalAddress());
+             SocketChannel peer = acceptor.accept()) {
+            ClientHandler handler = new ClientHandler(channel, server, UUID.randomUUID(), ExecutionMode.VIRTUAL);
+            handler.setResync(resync);
+            long resyncs = server.STATS.getResyncs();
+            ByteBuffer[] frames = new ByteBuffer[3 * HIGH_WATERMARK / FRAME_BYTES];
+            for (int i = 0; i < frames.length; ++i) {
+                frames[i] = ByteBuffer.allocate(FRAME_BYTES);
+            }
+            handler.addOutputFrames(frames, true);
+            handler.updateInterest();
+            assertTrue(handler.isSlow());
+            if (resync) {
+                assertEquals(0, handler.getQueuedBytes());
+            }
+            else {
+                assertTrue(handler.getQueuedBytes() > FRAME_BYTES && handler.getQueuedBytes() <= LOW_WATERMARK,
+                        handler.getQueuedBytes() + " bytes queued, expected drop_oldest down to the low watermark");
+            }
+            handler.addOutputFrames(new ByteBuffer[] {ByteBuffer.allocate(FRAME_BYTES)}, false);
+            while (handler.flush()) {  }
+            assertFalse(handler.isSlow());
+            assertTrue(handler.isOpen());
+            return server.STATS.getResyncs() - resyncs;
+        }
+    }
+
+    private static Client loginWhenFree(String name, BlockingQueue<Message> messages) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_S);
+        while (true) {
+            Client client = new Client("xml");
+            client.setMessageListener(messages::offer);
+            Fixture.connect(client);
+            client.login(name);
+            Message reply;
+            do {
+                reply = messages.poll(TIMEOUT_S, TimeUnit.SECONDS);
+                assertNotNull(reply, name + " got no login reply");
+            } while (reply.getType() != MessageType.SERVER_LOGIN_SUCCESS && reply.getType() != MessageType.SERVER_ERROR);
+            if (reply.getType() == MessageType.SERVER_LOGIN_SUCCESS) {
+                return client;
+            }
+            client.close();
+            messages.clear();
+            assertTrue(System.nanoTime() < deadline, name + " was never released");
+            Thread.sleep(10);
+        }
+    }
+
+    private static void readUntil(DataInputStream in, String marker, String forbidden) throws IOException {
+        String frame;
+        do {
+            frame = readFrame(in);
+            assertFalse(frame.contains(forbidden), "legacy client got " + frame);
+        } while (!frame.contains(marker));
+    }
+
+    private static Socket connectLegacy(String name) throws Exception {
+        Socket socket = Fixture.connect();
+        writeFrame(socket.getOutputStream(), "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>"
+                + "<command name=\"login\"><name>" + name + "</name><type>Client@21208_03</type></command>");
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        while (!readFrame(in).contains("<session>")) {  }
+        return socket;
+    }
+
+    private static Message receive(BlockingQueue<Message> messages, MessageType type) throws InterruptedException {
+        Message message;
+        do {
+            message = messages.poll(TIMEOUT_S, TimeUnit.SECONDS);
+            assertNotNull(message, "no " + type + " received");
+        } while (message.getType() != type);
+        return message;
+    }
+
+    private static void writeFrame(OutputStream out, String xml) throws IOException {
+        byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+        out.write(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        out.write(bytes);
+        out.flush();
+    }
+
+    private static String readFrame(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final long TIMEOUT_S = TestServer.TIMEOUT_S;
+    private static final int FRAME_BYTES = 128;
+    private static final int HIGH_WATERMARK = 8192;
+    private static final int LOW_WATERMARK = 2048;
+    private static TestServer Fixture;
+}
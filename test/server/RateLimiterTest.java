@@ -0,0 +1,134 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+    @Test
+    void bucketAllowsItsBurstThenRefillsAtItsRate() {
+        TokenBucket bucket = new TokenBucket(10, 3, 0);
+        assertTrue(bucket.tryTake(0));
+        assertTrue(bucket.tryTake(0));
+        assertTrue(bucket.tryTake(0));
+        assertFalse(bucket.tryTake(0));
+        assertFalse(bucket.tryTake(SECOND / 10 - 1));
+        assertTrue(bucket.tryTake(SECOND / 10));
+        assertFalse(bucket.tryTake(SECOND / 10));
+    }
+
+    @Test
+    void bucketNeverRefillsAboveItsBurst() {
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+        assertTrue(bucket.isFull(0));
+        assertTrue(bucket.tryTake(60 * SECOND));
+        assertTrue(bucket.tryTake(60 * SECOND));
+        assertFalse(bucket.tryTake(60 * SECOND));
+    }
+
+    @Test
+    void checkingWhetherABucketIsFullDoesNotRefillIt() {
+        TokenBucket bucket = new TokenBucket(10, 1, 0);
+        assertTrue(bucket.tryTake(0));
+        assertFalse(bucket.isFull(SECOND / 20));
+        assertTrue(bucket.isFull(SECOND / 10));
+        assertTrue(bucket.tryTake(SECOND / 10));
+        assertFalse(bucket.tryTake(SECOND / 10));
+    }
+
+    @Test
+    void concurrentTakersNeverExceedTheBurst() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, 1000, System.nanoTime());
+        AtomicInteger taken = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                for (int n = 0; n < 1000; ++n) {
+                    if (bucket.tryTake(System.nanoTime())) {
+                        taken.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(taken.get() >= 1000 && taken.get() <= 1001, taken.get() + " tokens taken");
+    }
+
+    @Test
+    void sessionLimitThrottlesFirst() {
+        RateLimiter limiter = new RateLimiter(10, 1, 10, 5);
+        TokenBucket session = new TokenBucket(10, 1, 0);
+        TokenBucket user = limiter.acquireUserBucket("alice", 0);
+        assertTrue(limiter.tryAcquire(session, user, 0));
+        assertFalse(limiter.tryAcquire(session, user, 0));
+        assertEquals(1, limiter.getThrottledBySession());
+        assertEquals(0, limiter.getThrottledByUser());
+    }
+
+    @Test
+    void userLimitIsSharedAcrossSessionsAndRefundsTheSessionToken() {
+        RateLimiter limiter = new RateLimiter(10, 5, 10, 1);
+        TokenBucket first = new TokenBucket(10, 5, 0);
+        TokenBucket second = new TokenBucket(10, 1, 0);
+        TokenBucket user = limiter.acquireUserBucket("alice", 0);
+        assertSame(user, limiter.acquireUserBucket("alice", 0));
+        assertTrue(limiter.tryAcquire(first, user, 0));
+        assertFalse(limiter.tryAcquire(second, user, 0));
+        assertEquals(1, limiter.getThrottledByUser());
+        assertTrue(second.tryTake(0));
+    }
+
+    @Test
+    void reconnectingDoesNotResetAnEmptyUserBucket() {
+        RateLimiter limiter = new RateLimiter(0, 0, 10, 1);
+        TokenBucket user = limiter.acquireUserBucket("alice", 0);
+        assertTrue(limiter.tryAcquire(null, user, 0));
+        limiter.releaseUserBucket("alice", user, 0);
+        TokenBucket again = limiter.acquireUserBucket("alice", 0);
+        assertSame(user, again);
+        assertFalse(limiter.tryAcquire(null, again, 0));
+    }
+
+    @Test
+    void forgetsUserBucketsOnceTheyHaveRefilled() {
+        RateLimiter limiter = new RateLimiter(0, 0, 10, 1);
+        TokenBucket idle = limiter.acquireUserBucket("alice", 0);
+        limiter.releaseUserBucket("alice", idle, 0);
+        assertEquals(0, limiter.getUserBucketCount());
+
+        TokenBucket busy = limiter.acquireUserBucket("bob", 0);
+        assertTrue(limiter.tryAcquire(null, busy, 0));
+        limiter.releaseUserBucket("bob", busy, 0);
+        assertEquals(1, limiter.getUserBucketCount());
+        limiter.acquireUserBucket("carol", SECOND / 10);
+        assertEquals(1, limiter.getUserBucketCount());
+        assertNotSame(busy, limiter.acquireUserBucket("bob", SECOND / 10));
+    }
+
+    @Test
+    void noUserLimitWithoutAUserRate() {
+        RateLimiter limiter = new RateLimiter(10, 1, 0, 0);
+        assertNull(limiter.acquireUserBucket("alice", 0));
+    }
+
+    private static final long SECOND = 1_000_000_000L;
+}
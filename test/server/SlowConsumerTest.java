@@ -0,0 +1,120 @@
+package server;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlowConsumerTest {
+    @BeforeAll
+    static void start() throws Exception {
+        ServerConfigurations.override(new String[] {
+                "logging=false",
+                "log_dir=" + Files.createTempDirectory("chat-test"),
+                "metrics_port=0",
+                "idle_timeout_ms=0",
+                "output_high_watermark=" + HIGH_WATERMARK,
+                "output_low_watermark=" + LOW_WATERMARK,
+                "slow_consumer_policy=drop_oldest"
+        });
+        ControlServer = new Server(0);
+    }
+
+    @AfterAll
+    static void stop() {
+        ServerConfigurations.override(new String[] {
+                "output_high_watermark=4194304",
+                "output_low_watermark=1048576"
+        });
+    }
+
+    @Test
+    void staysBelowTheHighWatermarkWithoutDroppingAnything() {
+        ClientHandler handler = newHandler();
+        handler.addOutputFrames(frames(HIGH_WATERMARK / FRAME_BYTES), true);
+        handler.updateInterest();
+        assertFalse(handler.isSlow());
+        assertEquals(HIGH_WATERMARK, handler.getQueuedBytes());
+        assertEquals(0, handler.getDroppedMessages());
+    }
+
+    @Test
+    void shedsDroppableFramesDownToTheLowWatermark() {
+        ClientHandler handler = newHandler();
+        int sent = 3 * HIGH_WATERMARK / FRAME_BYTES;
+        handler.addOutputFrames(frames(sent), true);
+        handler.updateInterest();
+        assertTrue(handler.isSlow());
+        assertTrue(handler.isOpen());
+        assertTrue(handler.getQueuedBytes() <= LOW_WATERMARK, handler.getQueuedBytes() + " bytes queued");
+        assertEquals(sent - handler.getQueuedBytes() / FRAME_BYTES, handler.getDroppedMessages());
+    }
+
+    @Test
+    void evictsWhenOnlyUndroppableFramesRemainAboveTheHighWatermark() {
+        ClientHandler handler = newHandler();
+        handler.addOutputFrames(frames(HIGH_WATERMARK / FRAME_BYTES + 1), false);
+        handler.addOutputFrames(frames(HIGH_WATERMARK / FRAME_BYTES / 2), true);
+        handler.updateInterest();
+        assertTrue(handler.isSlow());
+        assertFalse(handler.isOpen());
+        assertEquals(HIGH_WATERMARK / FRAME_BYTES / 2, handler.getDroppedMessages());
+    }
+
+    @Test
+    void concurrentProducersNeverOvershootTheHardCap() throws Exception {
+        ClientHandler handler = newHandler();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] producers = new Thread[8];
+        for (int i = 0; i < producers.length; ++i) {
+            producers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                for (int n = 0; n < HIGH_WATERMARK / FRAME_BYTES; ++n) {
+                    handler.addOutputFrames(frames(1), true);
+                }
+            });
+            producers[i].start();
+        }
+        start.countDown();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertTrue(handler.getQueuedBytes() <= 2 * HIGH_WATERMARK, handler.getQueuedBytes() + " bytes queued");
+        assertEquals(producers.length * HIGH_WATERMARK / FRAME_BYTES - 2 * HIGH_WATERMARK / FRAME_BYTES, handler.getDroppedMessages());
+    }
+
+    @Test
+    void exportsTheSlowSessionGauge() {
+        assertTrue(ControlServer.METRICS.getRegistry().scrape().contains("\nchat_slow_sessions 0\n"));
+    }
+
+    private static ClientHandler newHandler() {
+        return new ClientHandler(null, ControlServer, UUID.randomUUID(), ExecutionMode.VIRTUAL);
+    }
+
+    private static ByteBuffer[] frames(int count) {
+        ByteBuffer[] frames = new ByteBuffer[count];
+        for (int i = 0; i < count; ++i) {
+            frames[i] = ByteBuffer.allocate(FRAME_BYTES);
+        }
+        return frames;
+    }
+
+    private static final int FRAME_BYTES = 128;
+    private static final int HIGH_WATERMARK = 8192;
+    private static final int LOW_WATERMARK = 2048;
+    private static Server ControlServer;
+}
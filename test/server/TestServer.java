@@ -0,0 +1,117 @@
+package server;
+
+import client.Client;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+class TestServer implements AutoCloseable {
+    static TestServer open(String... settings) throws IOException {
+        Map<ServerConfigurations.Field, String> saved = ServerConfigurations.snapshot();
+        try {
+            int port;
+            try (ServerSocket probe = new ServerSocket(0)) {
+                port = probe.getLocalPort();
+            }
+            List<String> all = new ArrayList<>(List.of(
+                    "codec=xml",
+                    "execution=reactor",
+                    "io_threads=1",
+                    "logging=false",
+                    "log_dir=" + Files.createTempDirectory("chat-test"),
+                    "metrics_port=0",
+                    "idle_timeout_ms=0"
+            ));
+            all.addAll(Arrays.asList(settings));
+            ServerConfigurations.override(all.toArray(new String[0]));
+            return new TestServer(new Server(port), port, saved);
+        }
+        catch (IOException | RuntimeException e) {
+            ServerConfigurations.restore(saved);
+            throw e;
+        }
+    }
+
+    private TestServer(Server server, int port, Map<ServerConfigurations.Field, String> saved) {
+        ControlServer = server;
+        PORT = port;
+        Saved = saved;
+    }
+
+    TestServer start() throws InterruptedException {
+        ServerThread = new Thread(ControlServer::start, "test-server");
+        ServerThread.setDaemon(true);
+        ServerThread.start();
+        while (!ControlServer.isRunning()) {
+            Thread.sleep(10);
+        }
+        return this;
+    }
+
+    Server getServer() {
+        return ControlServer;
+    }
+
+    int getPort() {
+        return PORT;
+    }
+
+    Socket connect() throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_S);
+        while (true) {
+            try {
+                Socket socket = new Socket("127.0.0.1", PORT);
+                socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(TIMEOUT_S));
+                return socket;
+            }
+            catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    void connect(Client client) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_S);
+        while (true) {
+            try {
+                client.start("127.0.0.1", PORT);
+                return;
+            }
+            catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        try {
+            if (ServerThread != null) {
+                ServerThread.interrupt();
+                ServerThread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_S));
+            }
+        }
+        finally {
+            ServerConfigurations.restore(Saved);
+        }
+    }
+
+    static final long TIMEOUT_S = 5;
+    private final Server ControlServer;
+    private final int PORT;
+    private final Map<ServerConfigurations.Field, String> Saved;
+    private Thread ServerThread;
+}
@@ -0,0 +1,91 @@
+package server;
+
+import messages.ClientLogin;
+import messages.ServerList;
+import messages.ServerListDelta;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class UserRegistryTest {
+    @Test
+    void everyChangeBumpsTheVersion() {
+        UserRegistry users = new UserRegistry();
+        UUID alice = UUID.randomUUID();
+        ServerListDelta added = users.claim(alice, login("alice"));
+        assertEquals(1, added.version());
+        assertEquals("alice", added.user().name());
+        ServerListDelta removed = users.release(alice);
+        assertEquals(2, removed.version());
+        assertEquals("alice", removed.user().name());
+        assertEquals(2, users.getVersion());
+    }
+
+    @Test
+    void rejectsATakenNameWithoutChangingTheVersion() {
+        UserRegistry users = new UserRegistry();
+        users.claim(UUID.randomUUID(), login("alice"));
+        assertNull(users.claim(UUID.randomUUID(), login("alice")));
+        assertEquals(1, users.getVersion());
+    }
+
+    @Test
+    void releasedNameCanBeClaimedAgain() {
+        UserRegistry users = new UserRegistry();
+        UUID first = UUID.randomUUID();
+        users.claim(first, login("alice"));
+        users.release(first);
+        assertNotNull(users.claim(UUID.randomUUID(), login("alice")));
+    }
+
+    @Test
+    void releasingAnUnknownSessionIsNotAChange() {
+        UserRegistry users = new UserRegistry();
+        assertNull(users.release(UUID.randomUUID()));
+        assertEquals(0, users.getVersion());
+    }
+
+    @Test
+    void snapshotIsReusedUntilTheNextChange() {
+        UserRegistry users = new UserRegistry();
+        users.claim(UUID.randomUUID(), login("alice"));
+        ServerList first = users.snapshot();
+        assertSame(first, users.snapshot());
+        assertEquals(1, first.version());
+        assertEquals(List.of(login("alice")), first.users());
+
+        users.claim(UUID.randomUUID(), login("bob"));
+        ServerList second = users.snapshot();
+        assertEquals(2, second.version());
+        assertEquals(2, second.users().size());
+        assertEquals(1, first.users().size());
+    }
+
+    @Test
+    void snapshotVersionMatchesItsUsersWhileTheyChange() throws Exception {
+        UserRegistry users = new UserRegistry();
+        UUID alice = UUID.randomUUID();
+        Thread churn = new Thread(() -> {
+            for (int i = 0; i < 100000; ++i) {
+                users.claim(alice, login("alice"));
+                users.release(alice);
+            }
+        });
+        churn.start();
+        while (churn.isAlive()) {
+            ServerList list = users.snapshot();
+            assertEquals(list.version() % 2, (long) list.users().size(), "version " + list.version() + " with " + list.users());
+        }
+        churn.join();
+    }
+
+    private static ClientLogin login(String name) {
+        return new ClientLogin(name, "test");
+    }
+}
@@ -0,0 +1,282 @@
+package server.cluster;
+
+import messages.ClientLogin;
+import messages.ClientPrivateMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterNodeTest {
+    @Test
+    void claimsNamesItOwnsLocally() {
+        ClusterNode node = new ClusterNode(0, List.of(address(free())), TIMEOUT_MS, 16, new Recorder());
+        UUID alice = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        assertEquals(ClaimResult.GRANTED, node.claim("alice", alice).join());
+        assertEquals(ClaimResult.GRANTED, node.claim("alice", alice).join());
+        assertEquals(ClaimResult.TAKEN, node.claim("alice", other).join());
+        node.release("alice", other);
+        assertEquals(ClaimResult.TAKEN, node.claim("alice", other).join());
+        node.release("alice", alice);
+        assertEquals(ClaimResult.GRANTED, node.claim("alice", other).join());
+    }
+
+    @Test
+    void claimsOnTheNextLiveNodeWhileTheOwnerIsDown() {
+        ClusterNode node = new ClusterNode(0, List.of(address(free()), address(free())), TIMEOUT_MS, 16, new Recorder());
+        String name = ownedBy(node, 1, "bob");
+        UUID bob = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        assertEquals(0, node.liveOwnerOf(name));
+        assertEquals(ClaimResult.GRANTED, node.claim(name, bob).join());
+        assertEquals(ClaimResult.TAKEN, node.claim(name, other).join());
+        node.release(name, bob);
+        assertEquals(ClaimResult.GRANTED, node.claim(name, other).join());
+    }
+
+    @Test
+    void reclaimsOnTheOwnerWhenItComesBack() throws Exception {
+        List<InetSocketAddress> nodes = List.of(address(free()), address(free()));
+        Recorder survivor = new Recorder();
+        Recorder restarted = new Recorder();
+        try (ClusterNode first = new ClusterNode(0, nodes, TIMEOUT_MS, 16, survivor)) {
+            first.start();
+            String name = ownedBy(first, 1, "frank");
+            UUID frank = UUID.randomUUID();
+            UUID other = UUID.randomUUID();
+            try (ClusterNode second = new ClusterNode(1, nodes, TIMEOUT_MS, 16, new Recorder())) {
+                second.start();
+                awaitLive(first, 1, true);
+            }
+            awaitLive(first, 1, false);
+            assertEquals(ClaimResult.GRANTED, first.claim(name, frank).join());
+            survivor.LocalUsers.put(frank, new ClientLogin(name, "test"));
+
+            try (ClusterNode second = new ClusterNode(1, nodes, TIMEOUT_MS, 16, restarted)) {
+                second.start();
+                assertEquals(frank, restarted.Logins.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+                assertEquals(ClaimResult.TAKEN, second.claim(name, other).join());
+
+                survivor.LocalUsers.remove(frank);
+                first.release(name, frank);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MS);
+                ClaimResult result;
+                while ((result = second.claim(name, other).join()) == ClaimResult.TAKEN && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(ClaimResult.GRANTED, result);
+            }
+        }
+    }
+
+    @Test
+    void claimsAndReleasesThroughTheOwner() throws Exception {
+        List<InetSocketAddress> nodes = List.of(address(free()), address(free()));
+        try (ClusterNode first = new ClusterNode(0, nodes, TIMEOUT_MS, 16, new Recorder());
+             ClusterNode second = new ClusterNode(1, nodes, TIMEOUT_MS, 16, new Recorder())) {
+            first.start();
+            second.start();
+            awaitLive(first, 1, true);
+            awaitLive(second, 0, true);
+            String name = ownedBy(first, 1, "carol");
+            UUID carol = UUID.randomUUID();
+            UUID other = UUID.randomUUID();
+            assertEquals(ClaimResult.GRANTED, first.claim(name, carol).join());
+            assertEquals(ClaimResult.GRANTED, first.claim(name, carol).join());
+            assertEquals(ClaimResult.TAKEN, second.claim(name, other).join());
+
+            first.release(name, carol);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MS);
+            ClaimResult result;
+            while ((result = second.claim(name, other).join()) == ClaimResult.TAKEN && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(ClaimResult.GRANTED, result);
+        }
+    }
+
+    @Test
+    void dropsWhatARestartedPeerDoesNotReclaim() throws Exception {
+        List<InetSocketAddress> nodes = List.of(address(free()), address(free()));
+        Recorder recorder = new Recorder();
+        try (ClusterNode node = new ClusterNode(0, nodes, TIMEOUT_MS, 16, recorder)) {
+            node.start();
+            String kept = ownedBy(node, 0, "dave");
+            String lost = ownedBy(node, 0, "erin");
+            UUID dave = UUID.randomUUID();
+            UUID erin = UUID.randomUUID();
+            try (Socket before = connect(nodes.get(0))) {
+                send(before, hello(11), claim(1, kept, dave), claim(2, lost, erin), joined(dave, kept), joined(erin, lost));
+                assertEquals(dave, recorder.Logins.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+                assertEquals(erin, recorder.Logins.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+                assertEquals(ClaimResult.TAKEN, node.claim(kept, UUID.randomUUID()).join());
+                assertEquals(ClaimResult.TAKEN, node.claim(lost, UUID.randomUUID()).join());
+
+                try (Socket after = connect(nodes.get(0))) {
+                    send(after, hello(13), reclaim(kept, dave), joined(dave, kept), sync());
+                    assertEquals(erin, recorder.Logouts.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+                    assertNull(recorder.Logouts.poll(100, TimeUnit.MILLISECONDS));
+                    assertNull(recorder.Logins.poll());
+                    assertEquals(ClaimResult.TAKEN, node.claim(kept, UUID.randomUUID()).join());
+                    assertEquals(ClaimResult.GRANTED, node.claim(lost, UUID.randomUUID()).join());
+                }
+            }
+        }
+    }
+
+    private static void awaitLive(ClusterNode node, int peer, boolean live) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MS);
+        while (node.isLive(peer) != live) {
+            assertTrue(System.nanoTime() < deadline, "node " + peer + " never became " + (live ? "live" : "dead"));
+            Thread.sleep(10);
+        }
+    }
+
+    private static String ownedBy(ClusterNode node, int owner, String prefix) {
+        for (int i = 0; ; ++i) {
+            if (node.ownerOf(prefix + i) == owner) {
+                return prefix + i;
+            }
+        }
+    }
+
+    private static int free() {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            return probe.getLocalPort();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static InetSocketAddress address(int port) {
+        return new InetSocketAddress("127.0.0.1", port);
+    }
+
+    private static Socket connect(InetSocketAddress address) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_MS);
+        while (true) {
+            try {
+                return new Socket(address.getAddress(), address.getPort());
+            }
+            catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static void send(Socket socket, byte[]... ops) throws IOException {
+        for (byte[] op : ops) {
+            socket.getOutputStream().write(op);
+        }
+        socket.getOutputStream().flush();
+    }
+
+    private static byte[] hello(long incarnation) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(HELLO);
+        out.writeInt(1);
+        out.writeLong(incarnation);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] claim(long request, String name, UUID usid) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(CLAIM);
+        out.writeLong(request);
+        writeString(out, name);
+        writeUUID(out, usid);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] reclaim(String name, UUID usid) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(RECLAIM);
+        writeString(out, name);
+        writeUUID(out, usid);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] joined(UUID usid, String name) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(USER_JOINED);
+        writeUUID(out, usid);
+        writeString(out, name);
+        writeString(out, "test");
+        return bytes.toByteArray();
+    }
+
+    private static byte[] sync() {
+        return new byte[] {SYNC};
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeUUID(DataOutputStream out, UUID usid) throws IOException {
+        out.writeLong(usid.getMostSignificantBits());
+        out.writeLong(usid.getLeastSignificantBits());
+    }
+
+    private static class Recorder implements ClusterListener {
+        @Override
+        public void onRemoteLogin(int node, UUID usid, ClientLogin login) {
+            Logins.add(usid);
+        }
+
+        @Override
+        public void onRemoteLogout(int node, UUID usid) {
+            Logouts.add(usid);
+        }
+
+        @Override
+        public void onRemoteMessage(String room, String name, String text) {  }
+
+        @Override
+        public void onRemotePrivate(String from, ClientPrivateMessage message) {  }
+
+        @Override
+        public Map<UUID, ClientLogin> getLocalUsers() {
+            return LocalUsers;
+        }
+
+        private final Map<UUID, ClientLogin> LocalUsers = new ConcurrentHashMap<>();
+        private final BlockingQueue<UUID> Logins = new LinkedBlockingQueue<>();
+        private final BlockingQueue<UUID> Logouts = new LinkedBlockingQueue<>();
+    }
+
+    private static final byte HELLO = 1;
+    private static final byte CLAIM = 2;
+    private static final byte RECLAIM = 5;
+    private static final byte USER_JOINED = 6;
+    private static final byte SYNC = 10;
+    private static final long TIMEOUT_MS = 1000;
+    private static final long WAIT_MS = 5000;
+}
@@ -0,0 +1,132 @@
+package server.history;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageLogTest {
+    @Test
+    void readsBackAcrossSegmentsAndRestarts(@TempDir Path directory) throws IOException {
+        try (MessageLog log = open(directory)) {
+            append(log, 0, 40);
+            assertTrue(segments(directory).size() > 1);
+            assertRecords(log, 0, 40);
+        }
+        try (MessageLog log = open(directory)) {
+            assertEquals(40, log.getNextOffset());
+            assertRecords(log, 0, 40);
+            append(log, 40, 5);
+            assertRecords(log, 0, 45);
+        }
+    }
+
+    @Test
+    void cutsOffACorruptTail(@TempDir Path directory) throws IOException {
+        try (MessageLog log = open(directory)) {
+            append(log, 0, 5);
+        }
+        Path active = segments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(active, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) (last.get(0) ^ 0xFF)).rewind();
+            channel.write(last, channel.size() - 1);
+        }
+        try (MessageLog log = open(directory)) {
+            assertEquals(4, log.getNextOffset());
+            assertRecords(log, 0, 4);
+            append(log, 4, 2);
+            assertRecords(log, 0, 6);
+        }
+    }
+
+    @Test
+    void cutsOffATornRecord(@TempDir Path directory) throws IOException {
+        try (MessageLog log = open(directory)) {
+            append(log, 0, 3);
+        }
+        Path active = segments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(active, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        try (MessageLog log = open(directory)) {
+            assertEquals(2, log.getNextOffset());
+            assertRecords(log, 0, 2);
+        }
+    }
+
+    @Test
+    void recoversAnUnsealedSegment(@TempDir Path directory, @TempDir Path copy) throws IOException {
+        try (MessageLog log = open(directory)) {
+            append(log, 0, 3);
+            for (Path segment : segments(directory)) {
+                Files.copy(segment, copy.resolve(segment.getFileName()));
+            }
+        }
+        try (MessageLog log = open(copy)) {
+            assertEquals(3, log.getNextOffset());
+            assertRecords(log, 0, 3);
+        }
+    }
+
+    @Test
+    void mapsTheActiveSegmentAsItFills(@TempDir Path directory) throws IOException {
+        int count = 5000;
+        try (MessageLog log = new MessageLog(directory, LARGE_SEGMENT_BYTES, 0, 0, 10, 4096)) {
+            assertTrue(Files.size(segments(directory).get(0)) < LARGE_SEGMENT_BYTES / 100);
+            append(log, 0, count);
+            assertEquals(1, segments(directory).size());
+            assertTrue(Files.size(segments(directory).get(0)) < LARGE_SEGMENT_BYTES);
+            assertRecords(log, 0, count);
+        }
+        try (MessageLog log = new MessageLog(directory, LARGE_SEGMENT_BYTES, 0, 0, 10, 4096)) {
+            assertRecords(log, 0, count);
+            append(log, count, 10);
+            assertRecords(log, 0, count + 10);
+        }
+    }
+
+    private static MessageLog open(Path directory) throws IOException {
+        return new MessageLog(directory, SEGMENT_BYTES, 0, 0, 10, 64);
+    }
+
+    private static void append(MessageLog log, int from, int count) throws IOException {
+        for (int i = from; i < from + count; ++i) {
+            assertEquals(i, log.append(ByteBuffer.wrap(text(i).getBytes(StandardCharsets.UTF_8))).offset());
+        }
+    }
+
+    private static void assertRecords(MessageLog log, int from, int count) {
+        List<LogRecord> records = log.read(from, Integer.MAX_VALUE);
+        assertEquals(count, records.size());
+        for (int i = 0; i < count; ++i) {
+            assertEquals(from + i, records.get(i).offset());
+            assertEquals(text(from + i), StandardCharsets.UTF_8.decode(records.get(i).frame()).toString());
+        }
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    private static String text(int i) {
+        return "message number " + i;
+    }
+
+    private static final int SEGMENT_BYTES = 512;
+    private static final int LARGE_SEGMENT_BYTES = 16 * 1024 * 1024;
+}